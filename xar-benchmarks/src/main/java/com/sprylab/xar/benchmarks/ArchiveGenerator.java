@@ -0,0 +1,187 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.writer.Compression;
+import com.sprylab.xar.writer.XarDirectory;
+import com.sprylab.xar.writer.XarFileSource;
+import com.sprylab.xar.writer.XarSimpleDirectory;
+import com.sprylab.xar.writer.XarSink;
+
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Generates reproducible synthetic archives for benchmarks.
+ * <p>
+ * The entries are spread over directories of {@link #ENTRIES_PER_DIRECTORY} entries each. Their content is text-like, with about one
+ * in ten entries consisting of random bytes, so that compression is neither trivial nor pointless.
+ */
+public final class ArchiveGenerator {
+
+    /**
+     * The number of entries per directory.
+     */
+    public static final int ENTRIES_PER_DIRECTORY = 100;
+
+    private static final String[] WORDS = {
+        "xar", "archive", "entry", "table", "contents", "heap", "checksum", "offset", "length", "encoding", "directory", "file"
+    };
+
+    private final int entryCount;
+
+    private final SizeDistribution sizeDistribution;
+
+    private final XarCodec codec;
+
+    private final ChecksumAlgorithm checksumAlgorithm;
+
+    private final long seed;
+
+    /**
+     * @param entryCount        the number of file entries
+     * @param sizeDistribution  the distribution of the sizes of the entries
+     * @param codec             the {@link XarCodec} to encode the entries with
+     * @param checksumAlgorithm the checksum algorithm of the entries and the table of contents
+     */
+    public ArchiveGenerator(final int entryCount, final SizeDistribution sizeDistribution, final XarCodec codec,
+                            final ChecksumAlgorithm checksumAlgorithm) {
+        this(entryCount, sizeDistribution, codec, checksumAlgorithm, 42L);
+    }
+
+    /**
+     * @param entryCount        the number of file entries
+     * @param sizeDistribution  the distribution of the sizes of the entries
+     * @param codec             the {@link XarCodec} to encode the entries with
+     * @param checksumAlgorithm the checksum algorithm of the entries and the table of contents
+     * @param seed              the seed for the sizes and contents of the entries
+     */
+    public ArchiveGenerator(final int entryCount, final SizeDistribution sizeDistribution, final XarCodec codec,
+                            final ChecksumAlgorithm checksumAlgorithm, final long seed) {
+        this.entryCount = entryCount;
+        this.sizeDistribution = sizeDistribution;
+        this.codec = codec;
+        this.checksumAlgorithm = checksumAlgorithm;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the names of all file entries in the generated archives, in the order they are added
+     */
+    public List<String> getEntryNames() {
+        final List<String> names = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            names.add(getEntryName(i));
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private static String getDirectoryName(final int index) {
+        return String.format("dir-%04d", index / ENTRIES_PER_DIRECTORY);
+    }
+
+    private static String getFileName(final int index) {
+        return String.format("entry-%06d.txt", index);
+    }
+
+    private static String getEntryName(final int index) {
+        return getDirectoryName(index) + '/' + getFileName(index);
+    }
+
+    /**
+     * Writes the content of all entries to files in {@code directory}, laid out like the entries in the archive.
+     *
+     * @param directory the directory to write the files to
+     * @return the files written, in the order of {@link #getEntryNames()}
+     * @throws IOException when an I/O error occurred while writing
+     */
+    public List<File> generateFiles(final File directory) throws IOException {
+        final Random random = new Random(seed);
+        final List<File> files = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            final File file = new File(directory, getEntryName(i));
+            final File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            writeContent(file, sizeDistribution.nextSize(random), random);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static void writeContent(final File file, final long size, final Random random) throws IOException {
+        try (final BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            if (random.nextInt(10) == 0) {
+                final byte[] bytes = new byte[(int) size];
+                random.nextBytes(bytes);
+                sink.write(bytes);
+                return;
+            }
+            long written = 0L;
+            while (written < size) {
+                final String word = WORDS[random.nextInt(WORDS.length)];
+                final int length = (int) Math.min(word.length(), size - written);
+                sink.writeUtf8(word, 0, length);
+                written += length;
+                if (written < size) {
+                    sink.writeByte(random.nextInt(12) == 0 ? '\n' : ' ');
+                    written++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link XarSink} for the files written by {@link #generateFiles(File)}, which encodes and hashes their content.
+     *
+     * @param files the files written by {@link #generateFiles(File)}
+     * @return a {@link XarSink} ready to be written
+     * @throws IOException when an I/O error occurred while reading the files
+     */
+    public XarSink createSink(final List<File> files) throws IOException {
+        final XarSink xarSink = new XarSink(checksumAlgorithm);
+        XarDirectory directory = null;
+        String directoryName = null;
+        for (int i = 0; i < files.size(); i++) {
+            if (!getDirectoryName(i).equals(directoryName)) {
+                directoryName = getDirectoryName(i);
+                directory = new XarSimpleDirectory(directoryName);
+                xarSink.addDirectory(directory, null);
+            }
+            xarSink.addSource(new XarFileSource(files.get(i), new Compression(codec, false), checksumAlgorithm, false), directory);
+        }
+        return xarSink;
+    }
+
+    /**
+     * Generates the content files in {@code directory}/content and writes the archive to {@code directory}/archive.xar.
+     *
+     * @param directory the directory to write to
+     * @return the archive file
+     * @throws Exception when the archive could not be written
+     */
+    public File generateArchive(final File directory) throws Exception {
+        final List<File> files = generateFiles(new File(directory, "content"));
+        final File archiveFile = new File(directory, "archive.xar");
+        try (final OutputStream outputStream = new FileOutputStream(archiveFile)) {
+            createSink(files).write(outputStream);
+        }
+        return archiveFile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArchiveGenerator{entryCount=%d, sizeDistribution=%s, encoding=%s, checksumAlgorithm=%s}", entryCount,
+            sizeDistribution, codec.getStyle(), checksumAlgorithm);
+    }
+}
@@ -0,0 +1,71 @@
+package com.sprylab.xar.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.codec.XarCodec;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Decoding entry data with each {@link XarCodec}, independent of reading and extracting archives. The data is text-like, as in the
+ * archives of {@link ArchiveGenerator}. Each operation decodes {@value #SIZE} bytes, so the throughput in MB/s is the score times
+ * {@code SIZE / 1_000_000}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    private static final int SIZE = 32 * 1024 * 1024;
+
+    @Param({"GZIP", "LZ4"})
+    public EntryEncoding encoding;
+
+    private XarCodec codec;
+
+    private ByteString encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        codec = encoding.getCodec();
+        final Random random = new Random(42L);
+        final String[] words = {"xar", "archive", "entry", "table", "contents", "checksum", "heap", "offset", "length", "encoding"};
+        final Buffer content = new Buffer();
+        while (content.size() < SIZE) {
+            content.writeUtf8(words[random.nextInt(words.length)]).writeByte(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        final Buffer buffer = new Buffer();
+        try (final BufferedSink sink = Okio.buffer(codec.encode(buffer))) {
+            sink.write(content, SIZE);
+        }
+        encoded = buffer.readByteString();
+    }
+
+    @Benchmark
+    public long decode() throws Exception {
+        try (final BufferedSource source = Okio.buffer(codec.decode(new Buffer().write(encoded)))) {
+            return source.readAll(Okio.blackhole());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.sprylab.xar.benchmarks;
+
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.codec.XarCodecs;
+
+/**
+ * The encodings of entries benchmarks can be run with, including those without an {@link com.sprylab.xar.toc.model.Encoding} constant.
+ */
+public enum EntryEncoding {
+
+    NONE(XarCodecs.NONE),
+
+    GZIP(XarCodecs.GZIP),
+
+    BZIP2(XarCodecs.BZIP2),
+
+    LZ4(XarCodecs.LZ4);
+
+    private final XarCodec codec;
+
+    EntryEncoding(final XarCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return the {@link XarCodec} to encode and decode entries with
+     */
+    public XarCodec getCodec() {
+        return codec;
+    }
+}
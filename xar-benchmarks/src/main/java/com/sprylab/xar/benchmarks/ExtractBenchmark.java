@@ -0,0 +1,116 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.XarEntry;
+import com.sprylab.xar.XarSource;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.utils.RandomAccessFileSource;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Reading entry data: raw ranges through {@link RandomAccessFileSource}, decoded entries through {@link XarEntry#getSource()}, and
+ * extracting all entries with and without verification.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractBenchmark {
+
+    @Param({"100"})
+    public int entryCount;
+
+    @Param({"SMALL", "MIXED"})
+    public SizeDistribution sizeDistribution;
+
+    @Param({"NONE", "GZIP", "BZIP2", "LZ4"})
+    public EntryEncoding encoding;
+
+    @Param({"SHA1", "SHA256"})
+    public ChecksumAlgorithm checksumAlgorithm;
+
+    private File directory;
+
+    private File archiveFile;
+
+    private File extractDirectory;
+
+    private XarSource xarSource;
+
+    private List<XarEntry> entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = TempDirectories.create("xar-extract");
+        archiveFile = new ArchiveGenerator(entryCount, sizeDistribution, encoding.getCodec(), checksumAlgorithm).generateArchive(directory);
+        extractDirectory = new File(directory, "extracted");
+        xarSource = new FileXarSource(archiveFile);
+        entries = xarSource.getEntries();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TempDirectories.delete(directory);
+    }
+
+    @Benchmark
+    public long readRawRanges() throws Exception {
+        long total = 0L;
+        for (final XarEntry entry : entries) {
+            if (!entry.isDirectory() && entry.getLength() > 0L) {
+                try (final BufferedSource source = Okio.buffer(new RandomAccessFileSource(archiveFile, entry.getOffset(),
+                    entry.getLength()))) {
+                    total += source.readAll(Okio.blackhole());
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long readDecodedEntries() throws Exception {
+        long total = 0L;
+        for (final XarEntry entry : entries) {
+            if (!entry.isDirectory()) {
+                try (final BufferedSource source = Okio.buffer(entry.getSource())) {
+                    total += source.readAll(Okio.blackhole());
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public File extractAll() throws Exception {
+        xarSource.extractAll(extractDirectory, false);
+        return extractDirectory;
+    }
+
+    @Benchmark
+    public File extractAllVerified() throws Exception {
+        xarSource.extractAll(extractDirectory, true);
+        return extractDirectory;
+    }
+}
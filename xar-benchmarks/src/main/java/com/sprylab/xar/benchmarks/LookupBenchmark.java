@@ -0,0 +1,82 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.XarEntry;
+import com.sprylab.xar.XarToc;
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+
+/**
+ * Looking up entries in a parsed table of contents.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupBenchmark {
+
+    @Param({"100", "10000"})
+    public int entryCount;
+
+    private File directory;
+
+    private XarToc toc;
+
+    private String[] names;
+
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = TempDirectories.create("xar-lookup");
+        final ArchiveGenerator generator = new ArchiveGenerator(entryCount, SizeDistribution.SMALL, XarCodecs.NONE, ChecksumAlgorithm.SHA1);
+        toc = new FileXarSource(generator.generateArchive(directory)).getToc();
+        final List<String> entryNames = generator.getEntryNames();
+        names = entryNames.toArray(new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TempDirectories.delete(directory);
+    }
+
+    private String nextName() {
+        index = (index + 1) % names.length;
+        return names[index];
+    }
+
+    @Benchmark
+    public XarEntry getEntry() {
+        return toc.getEntry(nextName());
+    }
+
+    @Benchmark
+    public boolean hasMissingEntry() {
+        return toc.hasEntry(nextName() + ".missing");
+    }
+
+    @Benchmark
+    public List<XarEntry> listChildren() {
+        return toc.listChildren("dir-0000");
+    }
+}
@@ -0,0 +1,91 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.XarEntry;
+import com.sprylab.xar.XarHeader;
+import com.sprylab.xar.XarSource;
+import com.sprylab.xar.XarTocCache;
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+
+/**
+ * Opening an archive: reading the header and getting the table of contents with the different parsers and the {@link XarTocCache}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OpenBenchmark {
+
+    @Param({"100", "10000"})
+    public int entryCount;
+
+    @Param({"SHA1", "SHA256"})
+    public ChecksumAlgorithm checksumAlgorithm;
+
+    private File directory;
+
+    private File archiveFile;
+
+    private XarTocCache tocCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = TempDirectories.create("xar-open");
+        archiveFile = new ArchiveGenerator(entryCount, SizeDistribution.SMALL, XarCodecs.GZIP, checksumAlgorithm).generateArchive(directory);
+        tocCache = new XarTocCache(new File(directory, "toc-cache"));
+        // populate the cache
+        newSource(false, tocCache).getToc();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TempDirectories.delete(directory);
+    }
+
+    private XarSource newSource(final boolean streaming, final XarTocCache cache) {
+        final FileXarSource xarSource = new FileXarSource(archiveFile);
+        xarSource.setUseStreamingTocParser(streaming);
+        xarSource.setTocCache(cache);
+        return xarSource;
+    }
+
+    @Benchmark
+    public XarHeader header() throws Exception {
+        return new FileXarSource(archiveFile).getHeader();
+    }
+
+    @Benchmark
+    public XarEntry openWithModelParser() throws Exception {
+        return newSource(false, null).getEntry("dir-0000/entry-000000.txt");
+    }
+
+    @Benchmark
+    public XarEntry openWithStreamingParser() throws Exception {
+        return newSource(true, null).getEntry("dir-0000/entry-000000.txt");
+    }
+
+    @Benchmark
+    public XarEntry openWithTocCache() throws Exception {
+        return newSource(false, tocCache).getEntry("dir-0000/entry-000000.txt");
+    }
+}
@@ -0,0 +1,75 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.writer.XarSink;
+
+import okio.Okio;
+
+/**
+ * Packing files: encoding and hashing them into {@link com.sprylab.xar.writer.XarFileSource}s and writing the archive with
+ * {@link XarSink#write(OutputStream)} to a stream discarding all data.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PackBenchmark {
+
+    @Param({"100"})
+    public int entryCount;
+
+    @Param({"SMALL", "MIXED"})
+    public SizeDistribution sizeDistribution;
+
+    @Param({"NONE", "GZIP"})
+    public EntryEncoding encoding;
+
+    @Param({"SHA1", "SHA256"})
+    public ChecksumAlgorithm checksumAlgorithm;
+
+    private File directory;
+
+    private ArchiveGenerator generator;
+
+    private List<File> files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = TempDirectories.create("xar-pack");
+        generator = new ArchiveGenerator(entryCount, sizeDistribution, encoding.getCodec(), checksumAlgorithm);
+        files = generator.generateFiles(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TempDirectories.delete(directory);
+    }
+
+    @Benchmark
+    public XarSink pack() throws Exception {
+        final XarSink xarSink = generator.createSink(files);
+        xarSink.write(Okio.buffer(Okio.blackhole()).outputStream());
+        return xarSink;
+    }
+}
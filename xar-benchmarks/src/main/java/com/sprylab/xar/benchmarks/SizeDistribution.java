@@ -0,0 +1,46 @@
+package com.sprylab.xar.benchmarks;
+
+import java.util.Random;
+
+/**
+ * The distributions of entry sizes generated by {@link ArchiveGenerator}.
+ */
+public enum SizeDistribution {
+
+    /**
+     * Sizes from 64 bytes to 4 KiB, like configuration and markup files.
+     */
+    SMALL(64L, 4L * 1024L),
+
+    /**
+     * Sizes from 64 KiB to 1 MiB, like images and documents.
+     */
+    LARGE(64L * 1024L, 1024L * 1024L),
+
+    /**
+     * Sizes from 64 bytes to 1 MiB, with small sizes being as likely as large ones on a logarithmic scale, like typical bundles.
+     */
+    MIXED(64L, 1024L * 1024L);
+
+    private final long minSize;
+
+    private final long maxSize;
+
+    SizeDistribution(final long minSize, final long maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param random the random number generator to use
+     * @return the size of the next entry in bytes
+     */
+    public long nextSize(final Random random) {
+        if (this == MIXED) {
+            final double logMin = Math.log(minSize);
+            final double logMax = Math.log(maxSize);
+            return (long) Math.exp(logMin + random.nextDouble() * (logMax - logMin));
+        }
+        return minSize + (long) (random.nextDouble() * (maxSize - minSize));
+    }
+}
@@ -0,0 +1,31 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates and deletes the temporary directories holding generated archives.
+ */
+final class TempDirectories {
+
+    private TempDirectories() {
+    }
+
+    static File create(final String prefix) throws IOException {
+        final File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        return directory;
+    }
+
+    static void delete(final File fileOrDirectory) {
+        final File[] children = fileOrDirectory.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        fileOrDirectory.delete();
+    }
+}
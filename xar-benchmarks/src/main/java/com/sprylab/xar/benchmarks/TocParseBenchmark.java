@@ -0,0 +1,90 @@
+package com.sprylab.xar.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.XarSource;
+import com.sprylab.xar.XarToc;
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.toc.TocFactory;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.toc.model.ToC;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * The stages of reading the table of contents of an already opened archive: inflating, deserializing with {@link TocFactory} and
+ * creating the entries with either parser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TocParseBenchmark {
+
+    @Param({"100", "10000"})
+    public int entryCount;
+
+    private File directory;
+
+    private XarSource xarSource;
+
+    private byte[] tocXml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = TempDirectories.create("xar-toc");
+        final File archiveFile = new ArchiveGenerator(entryCount, SizeDistribution.SMALL, XarCodecs.GZIP, ChecksumAlgorithm.SHA1)
+            .generateArchive(directory);
+        xarSource = new FileXarSource(archiveFile);
+        try (final BufferedSource source = xarSource.getToCSource()) {
+            tocXml = source.readByteArray();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TempDirectories.delete(directory);
+    }
+
+    @Benchmark
+    public long inflate() throws Exception {
+        try (final BufferedSource source = xarSource.getToCSource()) {
+            return source.readAll(Okio.blackhole());
+        }
+    }
+
+    @Benchmark
+    public ToC tocFactory() throws Exception {
+        return TocFactory.fromInputStream(new ByteArrayInputStream(tocXml));
+    }
+
+    @Benchmark
+    public XarToc modelParser() throws Exception {
+        return new XarToc(xarSource, null, false);
+    }
+
+    @Benchmark
+    public XarToc streamingParser() throws Exception {
+        return new XarToc(xarSource, null, true);
+    }
+}
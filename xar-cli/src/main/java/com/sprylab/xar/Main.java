@@ -162,7 +162,13 @@ public final class Main {
         LOG.info("Compressed TOC length:   {}", header.getTocLengthCompressed());
         LOG.info("Uncompressed TOC length: {}", header.getTocLengthUncompressed());
         final int cksumAlg = header.getCksumAlg().intValue();
-        LOG.info("Checksum algorithm:      {} ({})", cksumAlg, ChecksumAlgorithm.values()[cksumAlg].toString().toLowerCase());
+        String cksumName;
+        try {
+            cksumName = header.getChecksumAlgorithm().getXarName();
+        } catch (final IllegalArgumentException e) {
+            cksumName = cksumAlg == ChecksumAlgorithm.HEADER_ID_OTHER ? header.getCksumName() : "unknown";
+        }
+        LOG.info("Checksum algorithm:      {} ({})", cksumAlg, cksumName);
     }
 
     private static void dumpToC(final XarSource xarSource, final File tocFile) {
@@ -1,23 +1,91 @@
 package com.sprylab.xar;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sprylab.xar.metrics.CountingSource;
+import com.sprylab.xar.metrics.XarMetrics;
 
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.Buffer;
 import okio.BufferedSource;
+import okio.ByteString;
 import okio.Okio;
+import okio.Source;
+import okio.Timeout;
 
 /**
  * Represents an eXtensible ARchiver using a URL.
+ * <p>
+ * To save round trips, the first {@link #getReadAheadSize() read-ahead size} bytes of the archive are fetched speculatively with the
+ * first request, which usually covers the header and the table of contents. If the server reports the total size in its
+ * {@code Content-Range} header, no separate request for {@link #getSize()} is needed either. When extracting all entries with
+ * {@link #extractAll(File, boolean, OnEntryExtractedListener)}, neighbouring entries are fetched together as planned by the
+ * {@link #getRangePlanner() range planner}. The concurrent variants of {@code extractAll} split the data of all entries into a few large
+ * ranges instead, which are downloaded in parallel and retried on failure, see
+ * {@link #extractAll(File, boolean, OnEntryExtractedListener, ExecutorService, int)}.
  */
 public class HttpXarSource extends XarSource {
 
+    /**
+     * The default number of bytes fetched speculatively from the start of the archive (64 KiB).
+     */
+    public static final long DEFAULT_READ_AHEAD_SIZE = 64L * 1024L;
+
+    /**
+     * The number of ranges downloaded concurrently by {@link #extractAll(File, boolean, OnEntryExtractedListener, ExecutorService)} if the
+     * number of threads of the executor service cannot be determined.
+     */
+    public static final int DEFAULT_RANGE_COUNT = 4;
+
+    /**
+     * The default number of times a failed range is requested again.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpXarSource.class);
+
+    private static final Pattern PATTERN_CONTENT_RANGE_SIZE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    private static final long UNKNOWN_SIZE = -1L;
+
     private final String url;
 
     private final OkHttpClient okHttpClient;
 
+    private final Object readAheadLock = new Object();
+
+    private long readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+
+    private RangePlanner rangePlanner = new RangePlanner();
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private volatile ByteString readAhead;
+
+    private volatile long size = UNKNOWN_SIZE;
+
     /**
      * Create a new {@link XarSource} from a {@code url}. This constructor uses a default, non-shared {@link OkHttpClient}.
      *
@@ -43,14 +111,336 @@ public class HttpXarSource extends XarSource {
         }
     }
 
+    /**
+     * Sets the number of bytes fetched speculatively from the start of the archive with the first request reading from there.
+     * Must be called before the archive is accessed for the first time.
+     *
+     * @param readAheadSize the number of bytes to fetch or {@code 0} to disable reading ahead
+     */
+    public void setReadAheadSize(final long readAheadSize) {
+        if (readAheadSize < 0L || readAheadSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid read-ahead size: " + readAheadSize);
+        }
+        this.readAheadSize = readAheadSize;
+    }
+
+    /**
+     * @return the number of bytes fetched speculatively from the start of the archive
+     */
+    public long getReadAheadSize() {
+        return readAheadSize;
+    }
+
+    /**
+     * Sets the {@link RangePlanner} used to merge the ranges of neighbouring entries when extracting all entries.
+     *
+     * @param rangePlanner the {@link RangePlanner} to use
+     */
+    public void setRangePlanner(final RangePlanner rangePlanner) {
+        if (rangePlanner == null) {
+            throw new IllegalArgumentException("rangePlanner == null");
+        }
+        this.rangePlanner = rangePlanner;
+    }
+
+    /**
+     * @return the {@link RangePlanner} used to merge the ranges of neighbouring entries when extracting all entries
+     */
+    public RangePlanner getRangePlanner() {
+        return rangePlanner;
+    }
+
+    /**
+     * Sets how often a range which failed to download is requested again when extracting all entries concurrently.
+     * Every retry resumes at the first entry of the range which has not been extracted yet.
+     *
+     * @param maxRetries the maximum number of consecutive retries per range
+     */
+    public void setMaxRetries(final int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the maximum number of consecutive retries per range when extracting all entries concurrently
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
     @Override
     public BufferedSource getRange(final long offset, final long length) throws IOException {
+        if (length == 0L) {
+            return new Buffer();
+        }
+
+        if (offset < readAheadSize) {
+            final ByteString readAhead = getReadAhead();
+            if (offset + length <= readAhead.size()) {
+                return new Buffer().write(readAhead, (int) offset, (int) length);
+            }
+        }
+
         return executeRangeRequest(offset, length);
     }
 
     @Override
     public long getSize() throws XarException {
-        return executeContentLengthRequest();
+        long result = size;
+        if (result == UNKNOWN_SIZE) {
+            result = executeContentLengthRequest();
+            size = result;
+        }
+        return result;
+    }
+
+    /**
+     * Extracts all files of to the directory denoted by {@code directory}.
+     * <p>
+     * The entries are extracted in the order of their offsets. Neighbouring entries are fetched together with a single request as planned
+     * by the {@link #getRangePlanner() range planner} and buffered in memory while they are extracted.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @throws IOException when an I/O error occurred while extracting
+     */
+    @Override
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener) throws IOException {
+        final List<XarEntry> entries = getEntries();
+        final List<XarEntry> files = new ArrayList<>(entries.size());
+        for (final XarEntry entry : entries) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entry.getEncoding() == null) {
+                // entries without data are not fetched at all
+                entry.extract(directory, verifyIntegrity, listener);
+            } else {
+                files.add(entry);
+            }
+        }
+
+        for (final RangePlanner.Range range : rangePlanner.plan(files)) {
+            // the fetched data is local to this call, so concurrent extractions do not interfere
+            ByteString rangeBytes = null;
+            if (range.getEntries().size() > 1) {
+                try (final BufferedSource source = openRange(range.getOffset(), range.getLength())) {
+                    rangeBytes = source.readByteString(range.getLength());
+                }
+            }
+            for (final XarEntry entry : range.getEntries()) {
+                if (DEBUG) {
+                    LOG.debug("Extracting entry '{}'.", entry);
+                }
+                final long entryOffset = entry.getOffset() - range.getOffset();
+                if (rangeBytes != null && entryOffset >= 0L && entryOffset + entry.getLength() <= rangeBytes.size()) {
+                    entry.extract(directory, verifyIntegrity, listener, new Buffer().write(rangeBytes, (int) entryOffset,
+                        (int) entry.getLength()));
+                } else {
+                    entry.extract(directory, verifyIntegrity, listener);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extracts all files to the directory denoted by {@code directory}, downloading {@code parallelism} ranges concurrently.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @param parallelism     the number of ranges to download concurrently
+     * @throws IOException when an I/O error occurred while extracting
+     * @see #extractAll(File, boolean, OnEntryExtractedListener, ExecutorService, int)
+     */
+    @Override
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener, final int parallelism)
+        throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            extractAll(directory, verifyIntegrity, listener, executorService, parallelism);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts all files to the directory denoted by {@code directory}, downloading one range per thread of {@code executorService}
+     * concurrently.
+     * <p>
+     * The number of threads is the core pool size of a {@link ThreadPoolExecutor}, as further threads are only started once its queue is
+     * full, or the parallelism of a {@link ForkJoinPool}. For other executor services, or thread pools without core threads like the one
+     * of {@link Executors#newCachedThreadPool()}, {@link #DEFAULT_RANGE_COUNT} ranges are downloaded.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @param executorService the {@link ExecutorService} to download and extract the ranges on
+     * @throws XarExtractionException when one or more entries could not be extracted
+     * @throws IOException            when an I/O error occurred while extracting
+     * @see #extractAll(File, boolean, OnEntryExtractedListener, ExecutorService, int)
+     */
+    @Override
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener,
+                           final ExecutorService executorService) throws IOException {
+        extractAll(directory, verifyIntegrity, listener, executorService, getRangeCount(executorService));
+    }
+
+    private static int getRangeCount(final ExecutorService executorService) {
+        int threadCount = 0;
+        if (executorService instanceof ThreadPoolExecutor) {
+            threadCount = ((ThreadPoolExecutor) executorService).getCorePoolSize();
+        } else if (executorService instanceof ForkJoinPool) {
+            threadCount = ((ForkJoinPool) executorService).getParallelism();
+        }
+        return threadCount > 0 ? threadCount : DEFAULT_RANGE_COUNT;
+    }
+
+    /**
+     * Extracts all files to the directory denoted by {@code directory}, downloading the data of all entries in {@code rangeCount} large
+     * ranges concurrently.
+     * <p>
+     * The data heap is split at entry boundaries into ranges of similar length (see {@link RangePlanner#split(List, int)}), each of which is
+     * fetched with a single request on {@code executorService}. The entries of a range are extracted one after another while the response
+     * is streamed, so nothing is buffered in memory. If a request fails, it is retried up to {@link #getMaxRetries()} times, resuming at the
+     * first entry which has not been extracted yet.
+     * <p>
+     * {@code listener} is called from the worker threads, so it has to be thread-safe. All ranges are attempted even if some of them fail;
+     * the failed entries are reported together afterwards. The {@code executorService} is not shut down by this method.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @param executorService the {@link ExecutorService} to download and extract the ranges on
+     * @param rangeCount      the number of ranges to split the data into
+     * @throws XarExtractionException when one or more entries could not be extracted
+     * @throws IOException            when an I/O error occurred while extracting
+     */
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener,
+                           final ExecutorService executorService, final int rangeCount) throws IOException {
+        final List<XarEntry> entries = getEntries();
+        final List<XarEntry> files = new ArrayList<>(entries.size());
+        for (final XarEntry entry : entries) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entry.getEncoding() == null) {
+                // entries without data are not fetched at all
+                entry.extract(directory, verifyIntegrity, listener);
+            } else {
+                files.add(entry);
+            }
+        }
+
+        final List<Future<Map<XarEntry, Throwable>>> futures = new ArrayList<>();
+        for (final RangePlanner.Range range : rangePlanner.split(files, rangeCount)) {
+            futures.add(executorService.submit(() -> extractRange(range, directory, verifyIntegrity, listener)));
+        }
+
+        final Map<XarEntry, Throwable> failedEntries = new LinkedHashMap<>();
+        for (final Future<Map<XarEntry, Throwable>> future : futures) {
+            try {
+                failedEntries.putAll(future.get());
+            } catch (final ExecutionException e) {
+                cancelAll(futures);
+                throw new XarException("Error extracting range", e.getCause());
+            } catch (final InterruptedException e) {
+                cancelAll(futures);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting entries");
+            }
+        }
+
+        if (!failedEntries.isEmpty()) {
+            throw new XarExtractionException(failedEntries);
+        }
+    }
+
+    private static void cancelAll(final List<? extends Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Downloads {@code range} and extracts its entries, retrying failed requests.
+     * <p>
+     * Only errors of the request or while reading the response are retried. If extracting an entry fails for another reason, e.g. because
+     * its checksum does not match or its file cannot be written, the entry is recorded as failed and the next entry is extracted.
+     *
+     * @return the entries which could not be extracted
+     */
+    private Map<XarEntry, Throwable> extractRange(final RangePlanner.Range range, final File directory, final boolean verifyIntegrity,
+                                                  final OnEntryExtractedListener listener) throws InterruptedIOException {
+        final List<XarEntry> entries = range.getEntries();
+        final long rangeEnd = range.getOffset() + range.getLength();
+        final Map<XarEntry, Throwable> failedEntries = new LinkedHashMap<>();
+        int nextEntryIndex = 0;
+        int retries = 0;
+        while (nextEntryIndex < entries.size()) {
+            final long start = entries.get(nextEntryIndex).getOffset();
+            try (final BufferedSource source = openRange(start, rangeEnd - start)) {
+                long position = start;
+                while (nextEntryIndex < entries.size()) {
+                    final XarEntry entry = entries.get(nextEntryIndex);
+                    if (entry.getOffset() < position) {
+                        // the data is shared with a previous entry, so it has to be fetched separately
+                        extractEntry(entry, directory, verifyIntegrity, listener, null, failedEntries);
+                        nextEntryIndex++;
+                    } else {
+                        source.skip(entry.getOffset() - position);
+                        final LimitedSource entrySource = new LimitedSource(source, entry.getLength());
+                        extractEntry(entry, directory, verifyIntegrity, listener, entrySource, failedEntries);
+                        nextEntryIndex++;
+                        // a decoder may not have consumed trailing bytes of the entry
+                        entrySource.skipRemaining();
+                        position = entry.getOffset() + entry.getLength();
+                    }
+                    retries = 0;
+                }
+            } catch (final IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while extracting entries");
+                }
+                if (retries++ >= maxRetries) {
+                    for (final XarEntry entry : entries.subList(nextEntryIndex, entries.size())) {
+                        failedEntries.put(entry, e);
+                    }
+                    return failedEntries;
+                }
+                LOG.warn("Error extracting {} from {}, retrying ({}/{}).", range, url, retries, maxRetries, e);
+            }
+        }
+        return failedEntries;
+    }
+
+    /**
+     * Extracts {@code entry} from {@code entrySource} or from a request of its own if it is {@code null}.
+     * <p>
+     * Errors while reading {@code entrySource} are thrown, so that the range is requested again. All other errors belong to the entry
+     * and are recorded in {@code failedEntries}.
+     */
+    private static void extractEntry(final XarEntry entry, final File directory, final boolean verifyIntegrity,
+                                     final OnEntryExtractedListener listener, final LimitedSource entrySource,
+                                     final Map<XarEntry, Throwable> failedEntries) throws IOException {
+        try {
+            if (entrySource == null) {
+                entry.extract(directory, verifyIntegrity, listener);
+            } else {
+                entry.extract(directory, verifyIntegrity, listener, entrySource);
+            }
+        } catch (final IOException e) {
+            if (Thread.currentThread().isInterrupted() || entrySource != null && entrySource.hasFailed()) {
+                throw e;
+            }
+            failedEntries.put(entry, e);
+        }
     }
 
     @Override
@@ -65,18 +455,48 @@ public class HttpXarSource extends XarSource {
         return url;
     }
 
+    private ByteString getReadAhead() throws IOException {
+        ByteString result = readAhead;
+        if (result == null) {
+            synchronized (readAheadLock) {
+                result = readAhead;
+                if (result == null) {
+                    result = executeReadAheadRequest();
+                    readAhead = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private ByteString executeReadAheadRequest() throws IOException {
+        try (final BufferedSource source = executeRangeRequest(0L, readAheadSize)) {
+            // the archive may be smaller than the requested range
+            final Buffer buffer = new Buffer();
+            while (buffer.size() < readAheadSize && source.read(buffer, readAheadSize - buffer.size()) != -1L) {
+                // keep reading
+            }
+            return buffer.readByteString();
+        }
+    }
+
     private BufferedSource executeRangeRequest(final long offset, final long length) throws XarException {
         try {
+            final String range = String.format("bytes=%d-%d", offset, offset + length - 1L);
             final Request request = new Request.Builder()
                 .get()
-                .header("Range", String.format("bytes=%d-%d", offset, offset + length - 1L))
+                .header("Range", range)
                 .url(this.url)
                 .build();
-            final Call call = okHttpClient.newCall(request);
 
-            final Response response = call.execute();
+            final Response response = execute(request, range);
             if (response.isSuccessful()) {
-                return Okio.buffer(response.body().source());
+                updateSize(response.header("Content-Range"));
+                final XarMetrics metrics = getMetrics();
+                if (metrics == XarMetrics.NONE) {
+                    return Okio.buffer(response.body().source());
+                }
+                return Okio.buffer(new CountingSource(response.body().source(), metrics, XarMetrics.Counter.HTTP_BYTES_RECEIVED));
             } else {
                 response.close();
                 throw new HttpException(String.format("Error executing request: %d %s", response.code(), response.message()), response);
@@ -86,15 +506,42 @@ public class HttpXarSource extends XarSource {
         }
     }
 
+    /**
+     * Executes {@code request} and reports it to the {@link #getMetrics() metrics}.
+     */
+    private Response execute(final Request request, final String subject) throws IOException {
+        final Call call = okHttpClient.newCall(request);
+        final XarMetrics metrics = getMetrics();
+        if (metrics == XarMetrics.NONE) {
+            return call.execute();
+        }
+        metrics.increment(XarMetrics.Counter.HTTP_REQUESTS, 1L);
+        final long start = System.nanoTime();
+        try {
+            return call.execute();
+        } finally {
+            metrics.record(XarMetrics.Timer.HTTP_REQUEST, subject, System.nanoTime() - start);
+        }
+    }
+
+    private void updateSize(final String contentRange) {
+        if (contentRange == null || size != UNKNOWN_SIZE) {
+            return;
+        }
+        final Matcher matcher = PATTERN_CONTENT_RANGE_SIZE.matcher(contentRange);
+        if (matcher.matches()) {
+            size = Long.parseLong(matcher.group(1));
+        }
+    }
+
     private long executeContentLengthRequest() throws XarException {
         try {
             final Request request = new Request.Builder()
                 .head()
                 .url(this.url)
                 .build();
-            final Call call = okHttpClient.newCall(request);
 
-            final Response response = call.execute();
+            final Response response = execute(request, "HEAD");
             if (response.isSuccessful()) {
                 final String contentLength = response.header("Content-Length");
                 return Long.valueOf(contentLength);
@@ -106,4 +553,63 @@ public class HttpXarSource extends XarSource {
             throw new XarException("Error reading content length", e);
         }
     }
+
+    /**
+     * Reads at most {@code limit} bytes from a shared source and leaves it open when closed.
+     */
+    private static final class LimitedSource implements Source {
+
+        private final BufferedSource source;
+
+        private long remaining;
+
+        private boolean failed;
+
+        private LimitedSource(final BufferedSource source, final long limit) {
+            this.source = source;
+            this.remaining = limit;
+        }
+
+        @Override
+        public long read(final Buffer sink, final long byteCount) throws IOException {
+            if (remaining == 0L) {
+                return -1L;
+            }
+            final long read;
+            try {
+                read = source.read(sink, Math.min(byteCount, remaining));
+            } catch (final IOException e) {
+                failed = true;
+                throw e;
+            }
+            if (read == -1L) {
+                failed = true;
+                throw new EOFException("Range ended " + remaining + " bytes early.");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        private void skipRemaining() throws IOException {
+            source.skip(remaining);
+            remaining = 0L;
+        }
+
+        /**
+         * @return {@code true} if reading the shared source failed
+         */
+        private boolean hasFailed() {
+            return failed;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return source.timeout();
+        }
+
+        @Override
+        public void close() {
+            // the shared source is closed by the owner
+        }
+    }
 }
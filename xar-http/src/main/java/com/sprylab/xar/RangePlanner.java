@@ -0,0 +1,183 @@
+package com.sprylab.xar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups the data of {@link XarEntry}s into as few byte ranges as possible, so that they can be fetched with few requests.
+ * <p>
+ * Entries are sorted by their offset. Adjacent entries and entries separated by a gap of at most {@link #getMaxGap()} bytes are merged
+ * into one range, as long as the range does not grow beyond {@link #getMaxRangeLength()} bytes. An entry which is larger than that on
+ * its own always gets a range of its own.
+ * <p>
+ * Alternatively, {@link #split(List, int)} divides the entries into a fixed number of ranges of similar length, to fetch them concurrently.
+ */
+public class RangePlanner {
+
+    /**
+     * The default maximum number of unneeded bytes between two entries, which are still fetched in one range (16 KiB).
+     */
+    public static final long DEFAULT_MAX_GAP = 16L * 1024L;
+
+    /**
+     * The default maximum length of a merged range (1 MiB).
+     */
+    public static final long DEFAULT_MAX_RANGE_LENGTH = 1024L * 1024L;
+
+    private static final Comparator<XarEntry> OFFSET_COMPARATOR = new Comparator<XarEntry>() {
+        @Override
+        public int compare(final XarEntry entry1, final XarEntry entry2) {
+            return Long.compare(entry1.getOffset(), entry2.getOffset());
+        }
+    };
+
+    private final long maxGap;
+
+    private final long maxRangeLength;
+
+    public RangePlanner() {
+        this(DEFAULT_MAX_GAP, DEFAULT_MAX_RANGE_LENGTH);
+    }
+
+    /**
+     * @param maxGap         the maximum number of unneeded bytes between two entries, which are still merged into one range
+     * @param maxRangeLength the maximum length of a merged range
+     */
+    public RangePlanner(final long maxGap, final long maxRangeLength) {
+        if (maxGap < 0L) {
+            throw new IllegalArgumentException("maxGap < 0: " + maxGap);
+        }
+        if (maxRangeLength < 1L) {
+            throw new IllegalArgumentException("maxRangeLength < 1: " + maxRangeLength);
+        }
+        this.maxGap = maxGap;
+        this.maxRangeLength = maxRangeLength;
+    }
+
+    public long getMaxGap() {
+        return maxGap;
+    }
+
+    public long getMaxRangeLength() {
+        return maxRangeLength;
+    }
+
+    /**
+     * Plans the ranges to fetch the data of {@code entries}.
+     *
+     * @param entries the entries to fetch, which must not be directories
+     * @return the ranges sorted by offset, each containing its entries sorted by offset
+     */
+    public List<Range> plan(final List<XarEntry> entries) {
+        final List<XarEntry> sortedEntries = new ArrayList<>(entries);
+        Collections.sort(sortedEntries, OFFSET_COMPARATOR);
+
+        final List<Range> ranges = new ArrayList<>();
+        Range currentRange = null;
+        for (final XarEntry entry : sortedEntries) {
+            final long entryEnd = entry.getOffset() + entry.getLength();
+            if (currentRange != null
+                && entry.getOffset() - currentRange.getEnd() <= maxGap
+                && Math.max(entryEnd, currentRange.getEnd()) - currentRange.offset <= maxRangeLength) {
+                currentRange.add(entry);
+            } else {
+                currentRange = new Range(entry);
+                ranges.add(currentRange);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Splits the data of {@code entries} into at most {@code count} contiguous ranges of similar length.
+     * <p>
+     * Ranges always start and end at entry boundaries, so an entry larger than the average range length gets a range of its own.
+     * Gaps between the entries are ignored, i.e. a range spans everything from its first to its last entry.
+     *
+     * @param entries the entries to fetch, which must not be directories
+     * @param count   the maximum number of ranges
+     * @return the ranges sorted by offset, each containing its entries sorted by offset
+     */
+    public List<Range> split(final List<XarEntry> entries, final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count < 1: " + count);
+        }
+        final List<XarEntry> sortedEntries = new ArrayList<>(entries);
+        Collections.sort(sortedEntries, OFFSET_COMPARATOR);
+
+        long totalLength = 0L;
+        for (final XarEntry entry : sortedEntries) {
+            totalLength += entry.getLength();
+        }
+        final long targetLength = Math.max(1L, (totalLength + count - 1L) / count);
+
+        final List<Range> ranges = new ArrayList<>();
+        Range currentRange = null;
+        long currentLength = 0L;
+        for (final XarEntry entry : sortedEntries) {
+            if (currentRange == null || currentLength >= targetLength && ranges.size() < count) {
+                currentRange = new Range(entry);
+                currentLength = 0L;
+                ranges.add(currentRange);
+            } else {
+                currentRange.add(entry);
+            }
+            currentLength += entry.getLength();
+        }
+        return ranges;
+    }
+
+    /**
+     * A contiguous range of bytes in an archive, which contains the data of one or more entries.
+     */
+    public static final class Range {
+
+        private final long offset;
+
+        private long length;
+
+        private final List<XarEntry> entries = new ArrayList<>();
+
+        private Range(final XarEntry entry) {
+            this.offset = entry.getOffset();
+            add(entry);
+        }
+
+        private void add(final XarEntry entry) {
+            entries.add(entry);
+            length = Math.max(getEnd(), entry.getOffset() + entry.getLength()) - offset;
+        }
+
+        private long getEnd() {
+            return offset + length;
+        }
+
+        /**
+         * @return the offset of this range, counted from the start of the archive
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the length of this range
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the entries contained in this range, sorted by offset
+         */
+        public List<XarEntry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Range{offset=%d, length=%d, entries=%d}", offset, length, entries.size());
+        }
+    }
+}
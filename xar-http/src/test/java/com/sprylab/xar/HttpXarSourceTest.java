@@ -3,15 +3,21 @@ package com.sprylab.xar;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,6 +30,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import com.sprylab.xar.metrics.InMemoryXarMetrics;
+import com.sprylab.xar.metrics.XarMetrics;
+
 import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -50,9 +59,11 @@ public class HttpXarSourceTest {
     private XarSource noneXarSource;
     private XarSource gzipXarSource;
 
+    private TestFileDispatcher dispatcher;
+
     @Before
     public void setUpMockWebServer() throws Exception {
-        final Dispatcher dispatcher = new TestFileDispatcher();
+        dispatcher = new TestFileDispatcher();
         mockWebServer.setDispatcher(dispatcher);
     }
 
@@ -268,16 +279,240 @@ public class HttpXarSourceTest {
         FileUtils.deleteDirectory(tempDir);
     }
 
+    @Test
+    public void testReadAheadFetchesHeaderAndTocWithSingleRequest() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final int requestCount = mockWebServer.getRequestCount();
+            xarSource.getEntries();
+            assertEquals(getResourceAsByteArray(((HttpXarSource) xarSource).getUrl().replaceFirst(".*/", "")).length, xarSource.getSize());
+            checkEntry(xarSource, "file.txt", getResourceAsByteArray("unpacked/file.txt"));
+            // the test archives are smaller than the read-ahead size
+            assertEquals(requestCount + 1, mockWebServer.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testExtractAllCoalescesRanges() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            ((HttpXarSource) xarSource).setReadAheadSize(0L);
+            final int requestCount = mockWebServer.getRequestCount();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                xarSource.extractAll(tempDir, true);
+                // one request each for the header, the table of contents and all entries
+                assertEquals(requestCount + 3, mockWebServer.getRequestCount());
+
+                checkExtractedFiles(tempDir);
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentExtractAllCoalesceRangesIndependently() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            for (final XarSource xarSource : getXarFiles()) {
+                ((HttpXarSource) xarSource).setReadAheadSize(0L);
+                xarSource.getEntries();
+                final int requestCount = mockWebServer.getRequestCount();
+                final File firstTempDir = TestUtil.getTempDirectory();
+                final File secondTempDir = new File(firstTempDir.getPath() + "-2");
+                try {
+                    final Future<?> first = executorService.submit(() -> {
+                        xarSource.extractAll(firstTempDir, true);
+                        return null;
+                    });
+                    final Future<?> second = executorService.submit(() -> {
+                        xarSource.extractAll(secondTempDir, true);
+                        return null;
+                    });
+                    first.get();
+                    second.get();
+                    // one request for all entries per call
+                    assertEquals(requestCount + 2, mockWebServer.getRequestCount());
+
+                    checkExtractedFiles(firstTempDir);
+                    checkExtractedFiles(secondTempDir);
+                } finally {
+                    FileUtils.deleteDirectory(firstTempDir);
+                    FileUtils.deleteDirectory(secondTempDir);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMetricsCountHttpRequests() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            ((HttpXarSource) xarSource).setReadAheadSize(0L);
+            final InMemoryXarMetrics metrics = new InMemoryXarMetrics();
+            xarSource.setMetrics(metrics);
+            final int requestCount = mockWebServer.getRequestCount();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                xarSource.extractAll(tempDir, true);
+                assertEquals(mockWebServer.getRequestCount() - requestCount, metrics.get(XarMetrics.Counter.HTTP_REQUESTS));
+                assertEquals(metrics.get(XarMetrics.Counter.HTTP_REQUESTS), metrics.getCount(XarMetrics.Timer.HTTP_REQUEST));
+                // entries are handed their part of the fetched range, so every byte received is read exactly once
+                assertTrue(metrics.get(XarMetrics.Counter.HTTP_BYTES_RECEIVED) > 0L);
+                assertEquals(metrics.get(XarMetrics.Counter.HTTP_BYTES_RECEIVED), metrics.get(XarMetrics.Counter.BYTES_READ));
+                assertEquals(1L, metrics.getCount(XarMetrics.Timer.TOC_PARSE));
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    @Test
+    public void testExtractAllInParallelRanges() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final HttpXarSource httpXarSource = (HttpXarSource) xarSource;
+            httpXarSource.setReadAheadSize(0L);
+            httpXarSource.getEntries();
+            final int requestCount = mockWebServer.getRequestCount();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                final ExecutorService executorService = Executors.newFixedThreadPool(2);
+                try {
+                    httpXarSource.extractAll(tempDir, true, null, executorService, 2);
+                } finally {
+                    executorService.shutdownNow();
+                }
+                assertEquals(requestCount + 2, mockWebServer.getRequestCount());
+                checkExtractedFiles(tempDir);
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    @Test
+    public void testExtractAllInParallelRangesRetriesFailedRanges() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final HttpXarSource httpXarSource = (HttpXarSource) xarSource;
+            httpXarSource.setReadAheadSize(0L);
+            httpXarSource.getEntries();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                dispatcher.failingRangeRequests.set(2);
+                httpXarSource.extractAll(tempDir, true, null, 2);
+                checkExtractedFiles(tempDir);
+
+                dispatcher.failingRangeRequests.set(Integer.MAX_VALUE);
+                httpXarSource.setMaxRetries(1);
+                try {
+                    httpXarSource.extractAll(tempDir, true, null, 2);
+                    fail("Expected XarExtractionException");
+                } catch (final XarExtractionException e) {
+                    // entries without data do not need a request
+                    int entriesWithData = 0;
+                    for (final XarEntry entry : httpXarSource.getEntries()) {
+                        if (!entry.isDirectory() && entry.getLength() > 0L) {
+                            entriesWithData++;
+                        }
+                    }
+                    assertEquals(entriesWithData, e.getFailedEntries().size());
+                } finally {
+                    dispatcher.failingRangeRequests.set(0);
+                }
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    @Test
+    public void testExtractAllInParallelRangesUsesOneRangePerThread() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final HttpXarSource httpXarSource = (HttpXarSource) xarSource;
+            httpXarSource.setReadAheadSize(0L);
+            httpXarSource.getEntries();
+            final int requestCount = mockWebServer.getRequestCount();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                final ExecutorService executorService = Executors.newFixedThreadPool(2);
+                try {
+                    httpXarSource.extractAll(tempDir, true, null, executorService);
+                } finally {
+                    executorService.shutdownNow();
+                }
+                assertEquals(requestCount + 2, mockWebServer.getRequestCount());
+                checkExtractedFiles(tempDir);
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    @Test
+    public void testExtractAllInParallelRangesContinuesAfterFailedEntry() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final HttpXarSource httpXarSource = (HttpXarSource) xarSource;
+            httpXarSource.setReadAheadSize(0L);
+            httpXarSource.getEntries();
+            final int requestCount = mockWebServer.getRequestCount();
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                // a directory in place of the first file lets writing it fail
+                final File blockedFile = new File(tempDir, "dir/subdir1/subsubdir_3/1.txt");
+                assertTrue(blockedFile.mkdirs());
+                try {
+                    httpXarSource.extractAll(tempDir, true, null, 1);
+                    fail("Expected XarExtractionException");
+                } catch (final XarExtractionException e) {
+                    assertEquals(1, e.getFailedEntries().size());
+                    assertEquals("dir/subdir1/subsubdir_3/1.txt", e.getFailedEntries().keySet().iterator().next().getName());
+                }
+                // the range is not requested again
+                assertEquals(requestCount + 1, mockWebServer.getRequestCount());
+                assertTrue(blockedFile.isDirectory());
+                assertTrue(blockedFile.delete());
+                checkExtractedFiles(tempDir, "1.txt");
+            } finally {
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+    }
+
+    private static void checkExtractedFiles(final File tempDir) throws Exception {
+        checkExtractedFiles(tempDir, null);
+    }
+
+    private static void checkExtractedFiles(final File tempDir, final String skippedFileName) throws Exception {
+        final File unpackedReferenceDirectory = TestUtil.getClasspathResourceAsFile(UNPACKED_REFERENCE_FILES_DIR_NAME);
+        for (final File referenceFile : FileUtils.listFiles(unpackedReferenceDirectory, null, true)) {
+            if (referenceFile.getName().equals(skippedFileName)) {
+                continue;
+            }
+            final String relativeFileName = referenceFile.getAbsolutePath().replace(unpackedReferenceDirectory.getAbsolutePath(), "");
+            // the reference files differ from the archived ones in trailing whitespace, see checkEntry
+            assertEquals(FileUtils.readFileToString(referenceFile, StandardCharsets.UTF_8).trim(),
+                FileUtils.readFileToString(new File(tempDir, relativeFileName), StandardCharsets.UTF_8).trim());
+        }
+    }
+
     private List<XarSource> getXarFiles() {
         return Arrays.asList(noneXarSource, gzipXarSource);
     }
 
     private static class TestFileDispatcher extends Dispatcher {
 
+        /**
+         * The number of following range requests to answer with an error.
+         */
+        private final AtomicInteger failingRangeRequests = new AtomicInteger();
+
         @Override
         public MockResponse dispatch(final RecordedRequest recordedRequest) throws InterruptedException {
             try {
                 final MockResponse mockResponse = new MockResponse();
+                if (recordedRequest.getHeader("Range") != null && failingRangeRequests.getAndDecrement() > 0) {
+                    return mockResponse.setResponseCode(503);
+                }
                 final File file = TestUtil.getClasspathResourceAsFile(recordedRequest.getPath().substring(1));
                 if (file == null || !file.exists()) {
                     return mockResponse.setResponseCode(404);
@@ -293,10 +528,12 @@ public class HttpXarSourceTest {
                         // Partial file
                         final Matcher matcher = PATTERN_RANGE_HEADER.matcher(range);
                         if (matcher.matches()) {
-                            final Integer start = Integer.valueOf(matcher.group(1));
-                            final Integer end = Integer.valueOf(matcher.group(2));
+                            final long start = Long.parseLong(matcher.group(1));
+                            final long end = Math.min(Long.parseLong(matcher.group(2)), file.length() - 1L);
                             source.skip(start);
-                            source.readFully(buffer, end - start + 1);
+                            source.readFully(buffer, end - start + 1L);
+                            mockResponse.setResponseCode(206)
+                                .setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, file.length()));
                         } else {
                             // Full file
                             source.readAll(buffer);
@@ -0,0 +1,65 @@
+package com.sprylab.xar;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RangePlannerTest {
+
+    @Test
+    public void testMergesNearbyEntries() {
+        final XarEntry first = createEntry(100L, 10L);
+        final XarEntry second = createEntry(110L, 20L);
+        final XarEntry third = createEntry(140L, 5L);
+        final XarEntry distant = createEntry(1000L, 10L);
+
+        final List<RangePlanner.Range> ranges = new RangePlanner(10L, 1024L).plan(Arrays.asList(distant, third, first, second));
+
+        assertEquals(2, ranges.size());
+        assertEquals(100L, ranges.get(0).getOffset());
+        assertEquals(45L, ranges.get(0).getLength());
+        assertEquals(Arrays.asList(first, second, third), ranges.get(0).getEntries());
+        assertEquals(1000L, ranges.get(1).getOffset());
+        assertEquals(10L, ranges.get(1).getLength());
+        assertEquals(Arrays.asList(distant), ranges.get(1).getEntries());
+    }
+
+    @Test
+    public void testLimitsRangeLength() {
+        final XarEntry first = createEntry(0L, 60L);
+        final XarEntry second = createEntry(60L, 60L);
+        final XarEntry large = createEntry(120L, 500L);
+
+        final List<RangePlanner.Range> ranges = new RangePlanner(0L, 100L).plan(Arrays.asList(first, second, large));
+
+        assertEquals(3, ranges.size());
+        assertEquals(Arrays.asList(large), ranges.get(2).getEntries());
+        assertEquals(500L, ranges.get(2).getLength());
+    }
+
+    @Test
+    public void testSplitsAtEntryBoundaries() {
+        final XarEntry first = createEntry(0L, 30L);
+        final XarEntry second = createEntry(30L, 30L);
+        final XarEntry third = createEntry(60L, 30L);
+        final XarEntry fourth = createEntry(90L, 30L);
+
+        final List<RangePlanner.Range> ranges = new RangePlanner().split(Arrays.asList(fourth, third, second, first), 2);
+
+        assertEquals(2, ranges.size());
+        assertEquals(Arrays.asList(first, second), ranges.get(0).getEntries());
+        assertEquals(60L, ranges.get(0).getLength());
+        assertEquals(Arrays.asList(third, fourth), ranges.get(1).getEntries());
+        assertEquals(60L, ranges.get(1).getOffset());
+    }
+
+    private static XarEntry createEntry(final long offset, final long length) {
+        final XarEntry entry = new XarEntry();
+        entry.offset = offset;
+        entry.length = length;
+        return entry;
+    }
+}
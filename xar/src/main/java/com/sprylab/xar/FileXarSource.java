@@ -1,8 +1,14 @@
 package com.sprylab.xar;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
+import com.sprylab.xar.utils.FileChannelSource;
 import com.sprylab.xar.utils.RandomAccessFileSource;
 
 import okio.BufferedSource;
@@ -11,29 +17,102 @@ import okio.Okio;
 /**
  * Represents an eXtensible ARchiver using a {@link File}.
  */
-public class FileXarSource extends XarSource {
+public class FileXarSource extends XarSource implements Closeable {
 
     private final File file;
 
+    private final boolean useSharedChannel;
+
+    private final Object channelLock = new Object();
+
+    private volatile FileChannel channel;
+
+    private volatile boolean closed;
+
     /**
      * Creates a new {@link XarSource} from {@code file}.
      *
      * @param file the archive file
      */
     public FileXarSource(final File file) {
+        this(file, false);
+    }
+
+    /**
+     * Creates a new {@link XarSource} from {@code file}.
+     * <p>
+     * If {@code useSharedChannel} is {@code true}, a single {@link FileChannel} is opened on first access and kept open until {@link #close()}
+     * is called. All ranges are then served by positional reads on this channel, so concurrent reads of entries never re-open or seek the file.
+     * Otherwise the file is opened for each call to {@link #getRange(long, long)}.
+     *
+     * @param file             the archive file
+     * @param useSharedChannel {@code true} to read through a single, shared {@link FileChannel}
+     */
+    public FileXarSource(final File file, final boolean useSharedChannel) {
         this.file = file;
+        this.useSharedChannel = useSharedChannel;
     }
 
     @Override
     public BufferedSource getRange(final long offset, final long length) throws IOException {
+        if (useSharedChannel) {
+            return Okio.buffer(new FileChannelSource(getChannel(), offset, length));
+        }
         return Okio.buffer(new RandomAccessFileSource(file, offset, length));
     }
 
+    /**
+     * Copies the range with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the operating
+     * system copy the data directly between the files where possible.
+     */
+    @Override
+    protected boolean transferRange(final long offset, final long length, final File targetFile) throws IOException {
+        try (final FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+            final FileChannel targetChannel = outputStream.getChannel();
+            if (useSharedChannel) {
+                transfer(getChannel(), offset, length, targetChannel);
+            } else {
+                try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                    transfer(randomAccessFile.getChannel(), offset, length, targetChannel);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void transfer(final FileChannel source, final long offset, final long length, final FileChannel target) throws IOException {
+        long transferred = 0L;
+        while (transferred < length) {
+            // positional transfers leave the position of the source untouched, so the shared channel can be used concurrently
+            final long count = source.transferTo(offset + transferred, length - transferred, target);
+            if (count <= 0L && offset + transferred >= source.size()) {
+                throw new EOFException(String.format("Range %d-%d exceeds the size of %s.", offset, offset + length, file));
+            }
+            transferred += count;
+        }
+    }
+
     @Override
     public long getSize() {
         return file.length();
     }
 
+    /**
+     * Releases the shared {@link FileChannel}, if any. Sources already returned by {@link #getRange(long, long)} must not be read afterwards.
+     *
+     * @throws IOException when an I/O error occurred while closing the channel
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("FileXarSource{file=%s}", file.getAbsolutePath());
@@ -46,4 +125,30 @@ public class FileXarSource extends XarSource {
         return file;
     }
 
+    /**
+     * @return {@code true} if this source reads through a single, shared {@link FileChannel}
+     */
+    public boolean isUsingSharedChannel() {
+        return useSharedChannel;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        FileChannel result = channel;
+        if (result != null && result.isOpen()) {
+            return result;
+        }
+        synchronized (channelLock) {
+            if (closed) {
+                throw new XarException("FileXarSource has been closed.");
+            }
+            result = channel;
+            // the channel may have been closed asynchronously, e.g. by interrupting a reading thread
+            if (result == null || !result.isOpen()) {
+                result = new RandomAccessFile(file, "r").getChannel();
+                channel = result;
+            }
+            return result;
+        }
+    }
+
 }
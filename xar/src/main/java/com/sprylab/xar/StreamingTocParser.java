@@ -0,0 +1,260 @@
+package com.sprylab.xar;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.toc.model.DateTransform;
+import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+/**
+ * Pull-parses the table of contents XML with StAX and creates {@link XarEntry}s directly, without building the {@link
+ * com.sprylab.xar.toc.model.ToC} object graph first.
+ * <p>
+ * Only the elements needed for {@link XarEntry} are evaluated, everything else is skipped.
+ * An instance must not be used concurrently.
+ */
+final class StreamingTocParser {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private static final String ELEMENT_FILE = "file";
+
+    private static final String ELEMENT_DATA = "data";
+
+    private static final String TYPE_DIRECTORY = "directory";
+
+    private final XarSource xarSource;
+
+    private final long heapOffset;
+
+    private final DateTransform dateTransform = new DateTransform();
+
+    StreamingTocParser(final XarSource xarSource) throws XarException {
+        this.xarSource = xarSource;
+        final XarHeader header = xarSource.getHeader();
+        this.heapOffset = header.getSize().longValue() + header.getTocLengthCompressed().longValue();
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * Parses the table of contents from {@code inputStream} and adds every entry to {@code toc}.
+     *
+     * @param inputStream the uncompressed table of contents
+     * @param toc         the {@link XarToc} to add the entries to
+     * @throws Exception when the table of contents could not be parsed
+     */
+    void parse(final InputStream inputStream, final XarToc toc) throws Exception {
+        final XMLStreamReader reader;
+        // XMLInputFactory is not guaranteed to be thread-safe
+        synchronized (XML_INPUT_FACTORY) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        }
+        try {
+            parse(reader, toc);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void parse(final XMLStreamReader reader, final XarToc toc) throws Exception {
+        // the local names of all currently open elements
+        final Deque<String> elements = new ArrayDeque<>();
+        // the entries of all currently open file elements
+        final Deque<EntryState> entries = new ArrayDeque<>();
+
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String element = reader.getLocalName();
+                final String parent = elements.peek();
+                if (ELEMENT_FILE.equals(element)) {
+                    final EntryState parentState = entries.peek();
+                    entries.push(new EntryState(reader.getAttributeValue(null, "id"), parentState));
+                    elements.push(element);
+                } else if (!entries.isEmpty() && ELEMENT_FILE.equals(parent)) {
+                    if (ELEMENT_DATA.equals(element)) {
+                        entries.peek().startData();
+                        elements.push(element);
+                    } else {
+                        // reads the text and advances to the end element
+                        readFileProperty(entries.peek(), element, reader, toc);
+                    }
+                } else if (!entries.isEmpty() && ELEMENT_DATA.equals(parent)) {
+                    readDataProperty(entries.peek(), element, reader);
+                } else {
+                    elements.push(element);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                final String element = elements.pop();
+                if (ELEMENT_FILE.equals(element)) {
+                    final EntryState state = entries.pop();
+                    if (state.entry.name == null) {
+                        throw new XarException("Found file element without name in table of contents.");
+                    }
+                }
+            }
+        }
+    }
+
+    private void readFileProperty(final EntryState state, final String element, final XMLStreamReader reader, final XarToc toc)
+        throws Exception {
+        final XarEntry entry = state.entry;
+        switch (element) {
+            case "name":
+                final String name = reader.getElementText();
+                // some archives contain multiple names, the first one wins
+                if (entry.name == null) {
+                    final String parentPath = state.getParentPath();
+                    entry.name = parentPath.isEmpty() ? name : parentPath + "/" + name;
+                    // the remaining properties are set on the same instance later on, but nested entries need their parent already
+                    toc.addEntry(entry, parentPath);
+                }
+                break;
+            case "type":
+                entry.isDirectory = TYPE_DIRECTORY.equals(reader.getElementText().trim());
+                break;
+            case "mode":
+                entry.mode = reader.getElementText();
+                break;
+            case "uid":
+                entry.uid = reader.getElementText();
+                break;
+            case "user":
+                entry.user = reader.getElementText();
+                break;
+            case "gid":
+                entry.gid = reader.getElementText();
+                break;
+            case "group":
+                entry.group = reader.getElementText();
+                break;
+            case "mtime":
+                entry.time = dateTransform.read(reader.getElementText().trim());
+                break;
+            default:
+                skipElement(reader);
+                break;
+        }
+    }
+
+    private void readDataProperty(final EntryState state, final String element, final XMLStreamReader reader) throws Exception {
+        final XarEntry entry = state.entry;
+        switch (element) {
+            case "extracted-checksum":
+                state.extractedChecksumStyle = readChecksumStyle(reader);
+                state.extractedChecksum = reader.getElementText().trim();
+                break;
+            case "unarchived-checksum":
+                state.unarchivedChecksumStyle = readChecksumStyle(reader);
+                state.unarchivedChecksum = reader.getElementText().trim();
+                break;
+            case "archived-checksum":
+                entry.archivedChecksumAlgorithm = readChecksumStyle(reader);
+                entry.archivedChecksum = reader.getElementText().trim();
+                break;
+            case "encoding":
+                final String style = reader.getAttributeValue(null, "style");
+                if (style != null) {
+                    entry.encodingStyle = style;
+                    entry.encoding = EncodingEnumTransform.fromStyle(style);
+                }
+                skipElement(reader);
+                break;
+            case "size":
+                entry.size = Long.parseLong(reader.getElementText().trim());
+                break;
+            case "offset":
+                entry.offset = heapOffset + Long.parseLong(reader.getElementText().trim());
+                break;
+            case "length":
+                entry.length = Long.parseLong(reader.getElementText().trim());
+                break;
+            default:
+                skipElement(reader);
+                break;
+        }
+        state.applyChecksum();
+    }
+
+    private static ChecksumAlgorithm readChecksumStyle(final XMLStreamReader reader) {
+        return ChecksumAlgorithm.valueOf(reader.getAttributeValue(null, "style").toUpperCase(Locale.ENGLISH));
+    }
+
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private final class EntryState {
+
+        private final XarEntry entry = new XarEntry();
+
+        private final EntryState parent;
+
+        private ChecksumAlgorithm extractedChecksumStyle;
+
+        private String extractedChecksum;
+
+        private ChecksumAlgorithm unarchivedChecksumStyle;
+
+        private String unarchivedChecksum;
+
+        private EntryState(final String id, final EntryState parent) {
+            this.parent = parent;
+            entry.id = id;
+            entry.xarSource = xarSource;
+        }
+
+        private String getParentPath() throws XarException {
+            if (parent == null) {
+                return "";
+            }
+            if (parent.entry.name == null) {
+                throw new XarException("Found nested file element before name of parent in table of contents.");
+            }
+            return parent.entry.name;
+        }
+
+        private void startData() {
+            // defaults of the data element, see com.sprylab.xar.toc.model.Data
+            entry.encoding = Encoding.NONE;
+            entry.encodingStyle = EncodingEnumTransform.MIME_TYPE_OCTET_STREAM;
+            entry.checksumAlgorithm = ChecksumAlgorithm.NONE;
+            entry.archivedChecksumAlgorithm = ChecksumAlgorithm.NONE;
+        }
+
+        private void applyChecksum() {
+            // the extracted checksum takes precedence over the unarchived checksum
+            if (extractedChecksum != null) {
+                entry.checksumAlgorithm = extractedChecksumStyle;
+                entry.checksum = extractedChecksum;
+            } else if (unarchivedChecksum != null) {
+                entry.checksumAlgorithm = unarchivedChecksumStyle;
+                entry.checksum = unarchivedChecksum;
+            }
+        }
+    }
+}
@@ -4,15 +4,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.zip.Inflater;
 
 import com.sprylab.xar.XarSource.OnEntryExtractedListener;
+import com.sprylab.xar.codec.InflateIndex;
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.metrics.CountingSource;
+import com.sprylab.xar.metrics.XarMetrics;
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 import com.sprylab.xar.toc.model.Data;
 import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
 import com.sprylab.xar.toc.model.SimpleChecksum;
 import com.sprylab.xar.toc.model.Type;
 import com.sprylab.xar.utils.HashUtils;
@@ -21,7 +27,7 @@ import com.sprylab.xar.utils.StringUtils;
 import okio.Buffer;
 import okio.BufferedSink;
 import okio.BufferedSource;
-import okio.InflaterSource;
+import okio.HashingSource;
 import okio.Okio;
 import okio.Source;
 
@@ -32,39 +38,49 @@ import okio.Source;
  */
 public class XarEntry {
 
-    private String id;
+    private List<XarEntry> children;
 
-    private String name;
+    // the following fields are package-private, so that TOC readers in this package can populate them directly
 
-    private boolean isDirectory;
+    String id;
 
-    private List<XarEntry> children;
+    String name;
+
+    boolean isDirectory;
+
+    String mode;
+
+    String uid;
+
+    String user;
+
+    String gid;
 
-    private String mode;
+    String group;
 
-    private String uid;
+    Date time;
 
-    private String user;
+    ChecksumAlgorithm checksumAlgorithm;
 
-    private String gid;
+    String checksum;
 
-    private String group;
+    ChecksumAlgorithm archivedChecksumAlgorithm;
 
-    private Date time;
+    String archivedChecksum;
 
-    private ChecksumAlgorithm checksumAlgorithm;
+    long size;
 
-    private String checksum;
+    long offset;
 
-    private long size;
+    long length;
 
-    private long offset;
+    Encoding encoding;
 
-    private long length;
+    String encodingStyle;
 
-    private Encoding encoding;
+    XarSource xarSource;
 
-    private XarSource xarSource;
+    private volatile InflateIndex inflateIndex;
 
     /**
      * Creates a new entry linked to the given {@code xarSource}.
@@ -110,18 +126,26 @@ public class XarEntry {
                 xarEntry.checksumAlgorithm = ChecksumAlgorithm.NONE;
                 xarEntry.checksum = null;
             }
+            final SimpleChecksum archivedChecksum = data.getArchivedChecksum();
+            if (archivedChecksum != null) {
+                xarEntry.archivedChecksumAlgorithm = archivedChecksum.getStyle();
+                xarEntry.archivedChecksum = archivedChecksum.getValue();
+            } else {
+                xarEntry.archivedChecksumAlgorithm = ChecksumAlgorithm.NONE;
+            }
             xarEntry.size = data.getSize();
             final XarHeader header = xarSource.getHeader();
             xarEntry.offset = header.getSize().longValue() + header.getTocLengthCompressed().longValue() + data.getOffset();
             xarEntry.length = data.getLength();
             xarEntry.encoding = data.getEncoding();
+            xarEntry.encodingStyle = data.getEncodingStyle();
         }
 
         return xarEntry;
     }
 
-    private XarEntry() {
-        // protected constructor
+    XarEntry() {
+        // package-private constructor
     }
 
     /**
@@ -131,6 +155,14 @@ public class XarEntry {
         return encoding;
     }
 
+    /**
+     * @return the encoding style of this entry, i.e. the MIME type of its encoding, or {@code null} if it has no data
+     * @see com.sprylab.xar.codec.XarCodec
+     */
+    public String getEncodingStyle() {
+        return encodingStyle;
+    }
+
     /**
      * @return the ID of this entry
      */
@@ -208,6 +240,20 @@ public class XarEntry {
         return checksumAlgorithm;
     }
 
+    /**
+     * @return the checksum of the archived, i.e. possibly compressed, data of this entry
+     */
+    public String getArchivedChecksum() {
+        return archivedChecksum;
+    }
+
+    /**
+     * @return the {@link ChecksumAlgorithm} used for the checksum of the archived data of this entry
+     */
+    public ChecksumAlgorithm getArchivedChecksumAlgorithm() {
+        return archivedChecksumAlgorithm;
+    }
+
     /**
      * @return the uncompressed size of entry
      */
@@ -215,6 +261,20 @@ public class XarEntry {
         return size;
     }
 
+    /**
+     * @return the offset of the (possibly compressed) data of this entry, counted from the start of the archive
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the (possibly compressed) data of this entry in the archive
+     */
+    public long getLength() {
+        return length;
+    }
+
     /**
      * @return children of this xar entry, or {@code null} if this entry is a file or has no children
      */
@@ -256,16 +316,20 @@ public class XarEntry {
             return new Buffer();
         }
 
-        switch (encoding) {
-            case NONE:
-                return xarSource.getRange(offset, length);
-            case GZIP:
-                return new InflaterSource(xarSource.getRange(offset, length), new Inflater());
-            case BZIP2:
-                // fall through
-            default:
-                throw new UnsupportedEncodingException("Encoding not supported: " + encoding.name());
+        return decode(xarSource.openRange(offset, length));
+    }
+
+    private Source decode(final Source rawSource) throws IOException {
+        final XarCodec codec = XarCodecs.forStyle(encodingStyle);
+        if (codec == null) {
+            rawSource.close();
+            throw new UnsupportedEncodingException("Encoding not supported: " + encodingStyle);
         }
+        final XarMetrics metrics = xarSource.getMetrics();
+        if (metrics == XarMetrics.NONE) {
+            return codec.decode(rawSource);
+        }
+        return new CountingSource(codec.decode(rawSource), metrics, XarMetrics.Counter.BYTES_DECODED);
     }
 
     /**
@@ -290,7 +354,7 @@ public class XarEntry {
             return new Buffer();
         }
 
-        return xarSource.getRange(offset, length);
+        return xarSource.openRange(offset, length);
     }
 
     /**
@@ -304,6 +368,99 @@ public class XarEntry {
         return Okio.buffer(getSource()).inputStream();
     }
 
+    /**
+     * Builds an {@link InflateIndex} of the data of this entry, which has to be encoded with {@link Encoding#GZIP}.
+     * <p>
+     * This inflates the whole entry once. The index may be persisted and passed to {@link #openChannel(InflateIndex)} later.
+     *
+     * @param span the minimum number of uncompressed bytes between checkpoints, e.g. {@link InflateIndex#DEFAULT_SPAN}
+     * @return the index of this entry
+     * @throws UnsupportedEncodingException if this entry is not encoded with {@link Encoding#GZIP}
+     * @throws IOException                  when an I/O error occurred while reading
+     */
+    public InflateIndex buildInflateIndex(final long span) throws IOException {
+        if (isDirectory) {
+            throw new IllegalStateException("Cannot build index for entries of type directory.");
+        }
+        if (encoding != Encoding.GZIP) {
+            throw new UnsupportedEncodingException("Cannot build index for encoding: " + encodingStyle);
+        }
+        return InflateIndex.build(getRawSource(), span);
+    }
+
+    /**
+     * Opens a read-only {@link SeekableByteChannel} over the uncompressed data of this entry.
+     * <p>
+     * For entries encoded with {@link Encoding#GZIP}, an {@link InflateIndex} with {@link InflateIndex#DEFAULT_SPAN} is built on first
+     * call and kept with this entry, so seeking inflates at most one span. Use {@link #openChannel(InflateIndex)} to pass a persisted
+     * index instead.
+     *
+     * @return the channel to read from, which has to be closed
+     * @throws UnsupportedEncodingException if seeking is not supported for the encoding of this entry
+     * @throws IOException                  when an I/O error occurred while building the index
+     */
+    public SeekableByteChannel openChannel() throws IOException {
+        InflateIndex index = null;
+        if (encoding == Encoding.GZIP) {
+            index = inflateIndex;
+            if (index == null) {
+                // concurrent callers may both build an index, which is harmless
+                index = buildInflateIndex(InflateIndex.DEFAULT_SPAN);
+                inflateIndex = index;
+            }
+        }
+        return openChannel(index);
+    }
+
+    /**
+     * Opens a read-only {@link SeekableByteChannel} over the uncompressed data of this entry.
+     * <p>
+     * Stored and empty entries are read directly at the requested position. Entries encoded with {@link Encoding#GZIP} are inflated
+     * starting at the nearest checkpoint of {@code index}. Other encodings are not supported.
+     *
+     * @param index the index built by {@link #buildInflateIndex(long)} for entries encoded with {@link Encoding#GZIP}, ignored otherwise
+     * @return the channel to read from, which has to be closed
+     * @throws UnsupportedEncodingException if seeking is not supported for the encoding of this entry
+     * @throws IllegalArgumentException     if {@code index} does not belong to this entry
+     */
+    public SeekableByteChannel openChannel(final InflateIndex index) throws UnsupportedEncodingException {
+        if (isDirectory) {
+            throw new IllegalStateException("Cannot open channel for entries of type directory.");
+        }
+        if (encoding == null || isStored()) {
+            return new XarEntryChannel(this, null);
+        }
+        if (encoding != Encoding.GZIP) {
+            throw new UnsupportedEncodingException("Seeking is not supported for encoding: " + encodingStyle);
+        }
+        if (index == null || index.getCompressedSize() != length || index.getUncompressedSize() != size) {
+            throw new IllegalArgumentException("Index does not belong to " + this);
+        }
+        return new XarEntryChannel(this, index);
+    }
+
+    /**
+     * @param position the uncompressed offset to start reading at, which must be less than the size of this entry
+     * @param index    the index to inflate with or {@code null} if the data is not compressed
+     * @return a source providing the uncompressed data from {@code position} on
+     */
+    BufferedSource getSource(final long position, final InflateIndex index) throws IOException {
+        if (index == null) {
+            return xarSource.openRange(offset + position, length - position);
+        }
+        final InflateIndex.Checkpoint checkpoint = index.getCheckpoint(position);
+        final long compressedOffset = checkpoint.getCompressedOffset();
+        final BufferedSource source = Okio.buffer(index.inflate(checkpoint, xarSource.openRange(offset + compressedOffset,
+            length - compressedOffset)));
+        try {
+            source.skip(position - checkpoint.getUncompressedOffset());
+        } catch (final IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        return source;
+    }
+
     /**
      * Convenience method to get access to the underlying byte data of this entry as a byte array.
      *
@@ -330,7 +487,7 @@ public class XarEntry {
      * Convenience method for extracting the corresponding file for this entry with optional integrity check.
      *
      * @param fileOrDirectory destination directory for extracted files or file name for extracted file
-     * @param verifyIntegrity if {@code true}, the integrity of the extracted file will be verified after extraction
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted file will be verified during extraction
      * @throws IOException when an I/O error occurred while extracting
      * @see #extract(File, boolean, OnEntryExtractedListener)
      */
@@ -340,69 +497,134 @@ public class XarEntry {
 
     /**
      * Extracts the underlying byte data of an entry and writes it to a file.
+     * <p>
+     * If {@code verifyIntegrity} is {@code true}, the checksums of the archived and the extracted data are computed while the data is
+     * written, so verifying does not read the data again. An {@link IOException} is thrown if either does not match the stored checksum.
      *
      * @param fileOrDirectory destination directory for extracted files or file name for extracted file
-     * @param verifyIntegrity if {@code true}, the integrity of the extracted file will be verified after extraction
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted file will be verified during extraction
      * @param listener        the listener that gets notified after the entry was extracted (successfully or not)
      * @throws IOException when an I/O error occurred while extracting
      */
     public void extract(final File fileOrDirectory, final boolean verifyIntegrity, final OnEntryExtractedListener listener)
         throws IOException {
         if (isDirectory) {
-            // get all files inside me
-            final List<XarEntry> entries = xarSource.getToc().getEntries();
-            final String directoryPath = name.concat("/");
-
-            final List<XarEntry> files = new ArrayList<>();
-
-            for (final XarEntry entry : entries) {
-                if (entry.getName().length() > directoryPath.length() && entry.getName().substring(0, directoryPath.length()).equals(directoryPath)) {
-                    files.add(entry);
+            // extract all files inside me
+            for (final XarEntry entry : xarSource.getToc().walk(name)) {
+                if (!entry.isDirectory()) {
+                    entry.extract(fileOrDirectory, verifyIntegrity, listener);
                 }
             }
 
-            // extract them
-            for (final XarEntry file : files) {
-                file.extract(fileOrDirectory, verifyIntegrity, listener);
-            }
+        } else {
+            extractFile(fileOrDirectory, verifyIntegrity, listener, null);
+        }
+    }
 
+    /**
+     * Extracts the byte data of this entry from {@code rawSource} instead of reading it from the {@link XarSource} and writes it to a file.
+     * <p>
+     * This allows sources which fetch the data of several entries at once to hand each entry its part of the data.
+     * {@code rawSource} must provide exactly the (possibly compressed) data of this entry, as returned by {@link #getRawSource()},
+     * and is closed afterwards.
+     *
+     * @param fileOrDirectory destination directory for extracted files or file name for extracted file
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted file will be verified during extraction
+     * @param listener        the listener that gets notified after the entry was extracted (successfully or not)
+     * @param rawSource       the raw data of this entry
+     * @throws IOException when an I/O error occurred while extracting
+     */
+    public void extract(final File fileOrDirectory, final boolean verifyIntegrity, final OnEntryExtractedListener listener,
+                        final Source rawSource) throws IOException {
+        if (isDirectory) {
+            rawSource.close();
+            throw new IllegalStateException("Cannot extract entries of type directory from a source.");
+        }
+        extractFile(fileOrDirectory, verifyIntegrity, listener, rawSource);
+    }
+
+    private void extractFile(final File fileOrDirectory, final boolean verifyIntegrity, final OnEntryExtractedListener listener,
+                             final Source rawSource) throws IOException {
+        final File targetFile;
+        if (fileOrDirectory.isFile()) {
+            targetFile = fileOrDirectory;
         } else {
-            final File targetFile;
-            if (fileOrDirectory.isFile()) {
-                targetFile = fileOrDirectory;
+            targetFile = new File(fileOrDirectory, name);
+        }
+        targetFile.getParentFile().mkdirs();
+
+        final XarMetrics metrics = xarSource.getMetrics();
+        final long start = metrics == XarMetrics.NONE ? 0L : System.nanoTime();
+        try {
+            if (verifyIntegrity) {
+                extractVerified(targetFile, rawSource == null ? getRawSource() : rawSource);
+            } else if (rawSource == null && isStored() && xarSource.transferRange(offset, length, targetFile)) {
+                // stored data has been copied without reading it
+                if (metrics != XarMetrics.NONE) {
+                    metrics.increment(XarMetrics.Counter.BYTES_READ, length);
+                }
             } else {
-                targetFile = new File(fileOrDirectory, name);
-            }
-            targetFile.getParentFile().mkdirs();
-
-            try (final Source source = getSource()) {
-                try (final BufferedSink sink = Okio.buffer(Okio.sink(targetFile))) {
+                try (final Source source = rawSource == null ? getSource() : getSource(rawSource);
+                     final BufferedSink sink = Okio.buffer(Okio.sink(targetFile))) {
                     sink.writeAll(source);
                 }
-            } finally {
-                if (verifyIntegrity) {
-                    verifyExtractedFile(targetFile);
-                }
-                if (listener != null) {
-                    listener.onEntryExtracted(this);
-                }
+            }
+        } finally {
+            if (metrics != XarMetrics.NONE) {
+                metrics.increment(XarMetrics.Counter.ENTRIES_EXTRACTED, 1L);
+                metrics.record(XarMetrics.Timer.ENTRY_EXTRACTION, name, System.nanoTime() - start);
+            }
+            if (listener != null) {
+                listener.onEntryExtracted(this);
             }
         }
     }
 
-    private void verifyExtractedFile(final File targetFile) throws IOException {
-        if (checksumAlgorithm == null && size == 0L || checksumAlgorithm == ChecksumAlgorithm.NONE) {
-            // empty files might have no checksum set
-            return;
-        }
+    private boolean isStored() {
+        return encoding != null && EncodingEnumTransform.MIME_TYPE_OCTET_STREAM.equals(encodingStyle);
+    }
 
-        try (final BufferedSource source = Okio.buffer(Okio.source(targetFile))) {
-            source.require(targetFile.length());
-            final String hash = HashUtils.hashHex(source, checksumAlgorithm);
-            if (!checksum.equals(hash)) {
-                throw new IOException("Hash of extracted file does match the stored checksum.");
+    /**
+     * Writes the data to {@code targetFile}, hashing the archived and the extracted data on the way.
+     */
+    private void extractVerified(final File targetFile, final Source rawSource) throws IOException {
+        final boolean verifyArchived = archivedChecksum != null && archivedChecksumAlgorithm != null
+            && archivedChecksumAlgorithm != ChecksumAlgorithm.NONE && !EncodingEnumTransform.MIME_TYPE_OCTET_STREAM.equals(encodingStyle);
+        final HashingSource archivedHashingSource = verifyArchived ? HashUtils.hashingSource(rawSource, archivedChecksumAlgorithm) : null;
+
+        // empty files might have no checksum set
+        final boolean verifyExtracted = checksumAlgorithm != null && checksumAlgorithm != ChecksumAlgorithm.NONE;
+        HashingSource extractedHashingSource = null;
+
+        try (final Source source = getSource(archivedHashingSource != null ? archivedHashingSource : rawSource)) {
+            extractedHashingSource = verifyExtracted ? HashUtils.hashingSource(source, checksumAlgorithm) : null;
+            try (final BufferedSink sink = Okio.buffer(Okio.sink(targetFile))) {
+                sink.writeAll(extractedHashingSource != null ? extractedHashingSource : source);
+            }
+            if (archivedHashingSource != null) {
+                // decoders may stop reading at the end of the compressed stream, but all archived bytes have to be hashed
+                final Buffer skipped = new Buffer();
+                while (archivedHashingSource.read(skipped, 8192L) != -1L) {
+                    skipped.clear();
+                }
             }
         }
+
+        if (verifyExtracted && !HashUtils.hashHex(extractedHashingSource).equals(checksum)) {
+            throw new IOException("Hash of extracted file does match the stored checksum.");
+        }
+        if (archivedHashingSource != null && !HashUtils.hashHex(archivedHashingSource).equals(archivedChecksum)) {
+            throw new IOException("Hash of archived data does not match the stored archived checksum.");
+        }
+    }
+
+    private Source getSource(final Source rawSource) throws IOException {
+        if (encoding == null) {
+            // file is empty
+            rawSource.close();
+            return new Buffer();
+        }
+        return decode(rawSource);
     }
 
     @Override
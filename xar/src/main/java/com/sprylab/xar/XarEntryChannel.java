@@ -0,0 +1,135 @@
+package com.sprylab.xar;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import com.sprylab.xar.codec.InflateIndex;
+
+import okio.BufferedSource;
+
+/**
+ * A read-only {@link SeekableByteChannel} over the uncompressed data of a {@link XarEntry}.
+ * <p>
+ * The data is read through a single source, which is reopened at the nearest checkpoint of the {@link InflateIndex} when seeking
+ * backwards or further ahead than the next checkpoint. This class is not thread-safe.
+ *
+ * @see XarEntry#openChannel(InflateIndex)
+ */
+final class XarEntryChannel implements SeekableByteChannel {
+
+    private final XarEntry entry;
+
+    private final InflateIndex index;
+
+    private BufferedSource source;
+
+    private long sourcePosition;
+
+    private long position;
+
+    private boolean open = true;
+
+    /**
+     * @param entry the entry to read
+     * @param index the index of {@code entry} or {@code null} if its data is not compressed
+     */
+    XarEntryChannel(final XarEntry entry, final InflateIndex index) {
+        this.entry = entry;
+        this.index = index;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= entry.getSize()) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (source == null || sourcePosition != position) {
+            seekSource();
+        }
+        final int count = source.read(dst);
+        if (count == -1) {
+            throw new EOFException("Unexpected end of data of " + entry);
+        }
+        position += count;
+        sourcePosition += count;
+        return count;
+    }
+
+    private void seekSource() throws IOException {
+        if (source != null && index != null && position > sourcePosition
+            && index.getCheckpoint(position).getUncompressedOffset() <= sourcePosition) {
+            // skipping ahead inflates less than starting over at the nearest checkpoint
+            source.skip(position - sourcePosition);
+            sourcePosition = position;
+            return;
+        }
+        closeSource();
+        source = entry.getSource(position, index);
+        sourcePosition = position;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0L) {
+            throw new IllegalArgumentException("newPosition < 0: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return entry.getSize();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(final long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        closeSource();
+    }
+
+    private void closeSource() throws IOException {
+        if (source != null) {
+            final BufferedSource closedSource = source;
+            source = null;
+            closedSource.close();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sprylab.xar;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exception that gets thrown if one or more entries of a {@link XarSource} could not be extracted.
+ * <p>
+ * The cause of each failed entry is available via {@link #getFailedEntries()}.
+ */
+public class XarExtractionException extends XarException {
+
+    private final Map<XarEntry, Throwable> failedEntries;
+
+    public XarExtractionException(final Map<XarEntry, Throwable> failedEntries) {
+        super(String.format("Could not extract %d entries", failedEntries.size()),
+            failedEntries.isEmpty() ? null : failedEntries.values().iterator().next());
+        this.failedEntries = Collections.unmodifiableMap(new LinkedHashMap<>(failedEntries));
+    }
+
+    /**
+     * @return the entries which could not be extracted mapped to the corresponding error, in the order of the table of contents
+     */
+    public Map<XarEntry, Throwable> getFailedEntries() {
+        return failedEntries;
+    }
+}
@@ -2,6 +2,7 @@ package com.sprylab.xar;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.joou.UInteger;
 import org.joou.ULong;
@@ -24,6 +25,11 @@ public class XarHeader {
 
     private static final short HEADER_SIZE = 28;
 
+    /**
+     * The length of the checksum name following the header if the checksum algorithm is {@link ChecksumAlgorithm#HEADER_ID_OTHER}.
+     */
+    private static final short CKSUM_NAME_SIZE = 36;
+
     private static final short VERSION = 1;
 
     // 32bit
@@ -44,6 +50,9 @@ public class XarHeader {
     // 32bit
     private final UInteger cksumAlg;
 
+    // only present if cksumAlg is ChecksumAlgorithm.HEADER_ID_OTHER
+    private final String cksumName;
+
     /**
      * Creates a header as byte array used for writing xar files.
      *
@@ -54,18 +63,25 @@ public class XarHeader {
      */
     public static byte[] createHeader(final long tocLengthCompressed, final long tocLengthUncompressed,
                                       final ChecksumAlgorithm checksumAlgorithm) {
-        final ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE);
+        final int cksumAlg = checksumAlgorithm.getHeaderId();
+        final short size = cksumAlg == ChecksumAlgorithm.HEADER_ID_OTHER ? HEADER_SIZE + CKSUM_NAME_SIZE : HEADER_SIZE;
+        final ByteBuffer bb = ByteBuffer.allocate(size);
         bb.putInt(0, MAGIC.intValue());
-        bb.putShort(4, HEADER_SIZE);
+        bb.putShort(4, size);
         bb.putShort(6, VERSION);
         bb.putLong(8, tocLengthCompressed);
         bb.putLong(16, tocLengthUncompressed);
-        bb.putInt(24, checksumAlgorithm.ordinal());
+        bb.putInt(24, cksumAlg);
+        if (cksumAlg == ChecksumAlgorithm.HEADER_ID_OTHER) {
+            // the name is padded with NUL bytes, which the buffer is initialized with
+            bb.position(HEADER_SIZE);
+            bb.put(checksumAlgorithm.getXarName().getBytes(StandardCharsets.US_ASCII));
+        }
         return bb.array();
     }
 
     public XarHeader(final XarSource xarSource) throws XarException {
-        try (final BufferedSource source = xarSource.getRange(0, HEADER_SIZE)) {
+        try (final BufferedSource source = xarSource.openRange(0, HEADER_SIZE)) {
             this.magic = UInteger.valueOf(source.readInt());
             checkMagic();
 
@@ -80,6 +96,19 @@ public class XarHeader {
         } catch (final IOException e) {
             throw new XarException("Error reading header", e);
         }
+
+        if (cksumAlg.intValue() == ChecksumAlgorithm.HEADER_ID_OTHER && size.intValue() > HEADER_SIZE) {
+            final long nameSize = Math.min(size.intValue() - HEADER_SIZE, CKSUM_NAME_SIZE);
+            try (final BufferedSource source = xarSource.openRange(HEADER_SIZE, nameSize)) {
+                final String name = source.readString(StandardCharsets.US_ASCII);
+                final int end = name.indexOf('\0');
+                this.cksumName = end < 0 ? name : name.substring(0, end);
+            } catch (final IOException e) {
+                throw new XarException("Error reading header", e);
+            }
+        } else {
+            this.cksumName = null;
+        }
     }
 
     private void checkMagic() {
@@ -119,4 +148,20 @@ public class XarHeader {
     public UInteger getCksumAlg() {
         return cksumAlg;
     }
+
+    /**
+     * @return the name of the checksum algorithm if {@link #getCksumAlg()} is {@link ChecksumAlgorithm#HEADER_ID_OTHER},
+     * {@code null} otherwise
+     */
+    public String getCksumName() {
+        return cksumName;
+    }
+
+    /**
+     * @return the {@link ChecksumAlgorithm} of the checksum of the table of contents
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return ChecksumAlgorithm.fromHeader(cksumAlg.intValue(), cksumName);
+    }
 }
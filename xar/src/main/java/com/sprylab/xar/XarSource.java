@@ -3,16 +3,27 @@ package com.sprylab.xar;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.zip.Inflater;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sprylab.xar.codec.ZlibPool;
+import com.sprylab.xar.metrics.CountingSource;
+import com.sprylab.xar.metrics.XarMetrics;
 import com.sprylab.xar.toc.model.Encoding;
 
 import okio.BufferedSource;
-import okio.InflaterSource;
 import okio.Okio;
 import okio.Source;
 
@@ -24,17 +35,80 @@ public abstract class XarSource {
 
     public XarTocParser customParser;
 
-    private XarHeader header;
+    private boolean useStreamingTocParser;
 
-    private XarToc toc;
+    private XarTocCache tocCache;
+
+    private XarMetrics metrics = XarMetrics.NONE;
+
+    private final Object headerLock = new Object();
+
+    private final Object tocLock = new Object();
+
+    private volatile XarHeader header;
+
+    private volatile XarToc toc;
+
+    /**
+     * Selects the built-in parser for the table of contents, unless a {@link #customParser} is set.
+     * <p>
+     * The streaming parser pull-parses the XML with StAX and creates the {@link XarEntry}s directly, which is considerably faster and needs
+     * less memory for large tables of contents than the default simple-xml based parser. It requires {@code javax.xml.stream}, which is not
+     * available on Android. Must be called before the table of contents is accessed for the first time.
+     *
+     * @param useStreamingTocParser {@code true} to use the streaming StAX parser, {@code false} to use simple-xml
+     */
+    public void setUseStreamingTocParser(final boolean useStreamingTocParser) {
+        this.useStreamingTocParser = useStreamingTocParser;
+    }
+
+    /**
+     * @return {@code true} if the streaming StAX parser is used for the table of contents
+     */
+    public boolean isUsingStreamingTocParser() {
+        return useStreamingTocParser;
+    }
+
+    /**
+     * Sets the {@link XarTocCache} to load the table of contents from, so that it is only parsed the first time an archive is opened.
+     * Must be called before the table of contents is accessed for the first time.
+     *
+     * @param tocCache the {@link XarTocCache} to use or {@code null} to always parse the table of contents
+     */
+    public void setTocCache(final XarTocCache tocCache) {
+        this.tocCache = tocCache;
+    }
+
+    /**
+     * @return the {@link XarTocCache} used for the table of contents or {@code null} if none is set
+     */
+    public XarTocCache getTocCache() {
+        return tocCache;
+    }
+
+    /**
+     * Sets the {@link XarMetrics} to report range requests, bytes read and decoded, parsing of the table of contents and extraction of
+     * entries to. Should be called before the source is used.
+     *
+     * @param metrics the {@link XarMetrics} to use or {@code null} to disable metrics
+     */
+    public void setMetrics(final XarMetrics metrics) {
+        this.metrics = metrics == null ? XarMetrics.NONE : metrics;
+    }
+
+    /**
+     * @return the {@link XarMetrics} reported to, {@link XarMetrics#NONE} if metrics are disabled
+     */
+    public XarMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * @return the {@link XarHeader} of this source
      * @throws XarException when there is an error while reading
      */
     public XarHeader getHeader() throws XarException {
-        ensureHeader();
-        return header;
+        return ensureHeader();
     }
 
     /**
@@ -44,8 +118,7 @@ public abstract class XarSource {
      */
     public XarToc getToc() throws XarException {
         ensureHeader();
-        ensureToc();
-        return toc;
+        return ensureToc();
     }
 
     /**
@@ -59,7 +132,7 @@ public abstract class XarSource {
     public BufferedSource getToCSource() throws IOException {
         final long headerSize = getHeader().getSize().longValue();
         final long compressedTocSize = getHeader().getTocLengthCompressed().longValue();
-        return Okio.buffer(new InflaterSource(getRange(headerSize, compressedTocSize), new Inflater()));
+        return Okio.buffer(ZlibPool.getDefault().inflate(openRange(headerSize, compressedTocSize)));
     }
 
     /**
@@ -83,6 +156,39 @@ public abstract class XarSource {
      */
     public abstract BufferedSource getRange(long offset, long length) throws IOException;
 
+    /**
+     * Calls {@link #getRange(long, long)} and reports the request and the bytes read to the {@link #getMetrics() metrics}.
+     * All ranges read by the library itself are opened by this method.
+     *
+     * @param offset the offset to start
+     * @param length the number of bytes to read counting from offset
+     * @return a {@link BufferedSource} for accessing {@code file} constrained to {@code offset} and {@code length}
+     * @throws IOException when an I/O error occurred while reading or opening the file
+     */
+    protected final BufferedSource openRange(final long offset, final long length) throws IOException {
+        final XarMetrics metrics = this.metrics;
+        if (metrics == XarMetrics.NONE) {
+            return getRange(offset, length);
+        }
+        metrics.increment(XarMetrics.Counter.RANGE_REQUESTS, 1L);
+        return Okio.buffer(new CountingSource(getRange(offset, length), metrics, XarMetrics.Counter.BYTES_READ));
+    }
+
+    /**
+     * Copies the raw binary data in a range of this file to {@code targetFile} without passing it through the Java heap, if supported.
+     * <p>
+     * This is used to extract stored entries without verifying them. The default implementation does not support it.
+     *
+     * @param offset     the offset to start
+     * @param length     the number of bytes to copy counting from offset
+     * @param targetFile the file to write the data to, which is created or truncated
+     * @return {@code true} if the data has been copied, {@code false} if this is not supported and {@code targetFile} was not touched
+     * @throws IOException when an I/O error occurred while copying
+     */
+    protected boolean transferRange(final long offset, final long length, final File targetFile) throws IOException {
+        return false;
+    }
+
     /**
      * Gets the file size in bytes.
      *
@@ -168,26 +274,140 @@ public abstract class XarSource {
         }
     }
 
+    /**
+     * Extracts all files to the directory denoted by {@code directory} using {@code parallelism} threads.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @param parallelism     the number of entries to extract concurrently
+     * @throws IOException when an I/O error occurred while extracting
+     * @see #extractAll(File, boolean, OnEntryExtractedListener, ExecutorService)
+     */
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener, final int parallelism)
+        throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            extractAll(directory, verifyIntegrity, listener, executorService);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts all files to the directory denoted by {@code directory}, inflating and writing entries concurrently on {@code executorService}.
+     * <p>
+     * The directory tree is created once up front. {@code listener} is called from the worker threads, so it has to be thread-safe.
+     * All entries are attempted even if some of them fail; the failures are reported together afterwards.
+     * The {@code executorService} is not shut down by this method.
+     *
+     * @param directory       destination directory for extracted files
+     * @param verifyIntegrity if {@code true}, the integrity of the extracted files will be verified after extraction
+     * @param listener        the listener that gets notified after an entry was extracted (successfully or not)
+     * @param executorService the {@link ExecutorService} to extract the entries on
+     * @throws XarExtractionException when one or more entries could not be extracted
+     * @throws IOException            when an I/O error occurred while extracting
+     */
+    public void extractAll(final File directory, final boolean verifyIntegrity, final OnEntryExtractedListener listener,
+                           final ExecutorService executorService) throws IOException {
+        final List<XarEntry> entries = getToc().getEntries();
+        final List<XarEntry> files = new ArrayList<>(entries.size());
+        for (int i = 0, entriesSize = entries.size(); i < entriesSize; i++) {
+            final XarEntry entry = entries.get(i);
+            if (!entry.isDirectory()) {
+                files.add(entry);
+            }
+        }
+
+        createParentDirectories(directory, files);
+
+        final List<Future<?>> futures = new ArrayList<>(files.size());
+        for (final XarEntry entry : files) {
+            futures.add(executorService.submit(() -> {
+                if (DEBUG) {
+                    LOG.debug("Extracting entry '{}'.", entry);
+                }
+                entry.extract(directory, verifyIntegrity, listener);
+                return null;
+            }));
+        }
+
+        final Map<XarEntry, Throwable> failedEntries = new LinkedHashMap<>();
+        for (int i = 0, futuresSize = futures.size(); i < futuresSize; i++) {
+            try {
+                futures.get(i).get();
+            } catch (final ExecutionException e) {
+                failedEntries.put(files.get(i), e.getCause());
+            } catch (final InterruptedException e) {
+                for (final Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting entries");
+            }
+        }
+
+        if (!failedEntries.isEmpty()) {
+            throw new XarExtractionException(failedEntries);
+        }
+    }
+
+    private static void createParentDirectories(final File directory, final List<XarEntry> files) throws IOException {
+        final Set<File> parentDirectories = new HashSet<>();
+        for (final XarEntry entry : files) {
+            final File parentDirectory = new File(directory, entry.getName()).getParentFile();
+            if (parentDirectories.add(parentDirectory) && !parentDirectory.isDirectory() && !parentDirectory.mkdirs()
+                && !parentDirectory.isDirectory()) {
+                throw new XarException("Could not create directory " + parentDirectory);
+            }
+        }
+    }
+
     /**
      * Creates the {@link XarToc} if necessary.
+     * <p>
+     * Concurrent callers wait for a single thread to create it; once created, it is returned without locking.
      *
+     * @return the {@link XarToc}
      * @throws XarException when there is an error while reading
      */
-    private void ensureToc() throws XarException {
-        if (toc == null) {
-            toc = createToc();
+    private XarToc ensureToc() throws XarException {
+        XarToc result = toc;
+        if (result == null) {
+            synchronized (tocLock) {
+                result = toc;
+                if (result == null) {
+                    result = createToc();
+                    toc = result;
+                }
+            }
         }
+        return result;
     }
 
     /**
      * Creates the {@link XarHeader} if necessary.
+     * <p>
+     * Concurrent callers wait for a single thread to create it; once created, it is returned without locking.
      *
+     * @return the {@link XarHeader}
      * @throws XarException when there is an error while reading
      */
-    private void ensureHeader() throws XarException {
-        if (header == null) {
-            header = createHeader();
+    private XarHeader ensureHeader() throws XarException {
+        XarHeader result = header;
+        if (result == null) {
+            synchronized (headerLock) {
+                result = header;
+                if (result == null) {
+                    result = createHeader();
+                    header = result;
+                }
+            }
         }
+        return result;
     }
 
     /**
@@ -197,7 +417,10 @@ public abstract class XarSource {
      * @throws XarException when there is an error while reading
      */
     private XarToc createToc() throws XarException {
-        return new XarToc(this, customParser);
+        if (tocCache != null) {
+            return tocCache.getToc(this, customParser, useStreamingTocParser);
+        }
+        return new XarToc(this, customParser, useStreamingTocParser);
     }
 
     /**
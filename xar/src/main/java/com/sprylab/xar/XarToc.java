@@ -2,12 +2,16 @@ package com.sprylab.xar;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 import com.sprylab.xar.XarTocParser;
+import com.sprylab.xar.metrics.XarMetrics;
 import com.sprylab.xar.toc.TocFactory;
 import com.sprylab.xar.toc.model.ToC;
 import com.sprylab.xar.utils.FilePath;
@@ -25,16 +29,56 @@ public class XarToc {
 
     private final Map<String, XarEntry> nameToEntryMap = new HashMap<>();
 
+    /**
+     * All entries sorted by path, so that the entries below a directory form a contiguous range.
+     */
+    private final NavigableMap<String, XarEntry> pathIndex = new TreeMap<>();
+
+    private final List<XarEntry> rootEntries = new ArrayList<>();
+
     private final XarSource xarSource;
 
     public XarToc(final XarSource xarSource, final XarTocParser parser) throws XarException {
+        this(xarSource, parser, false);
+    }
+
+    /**
+     * Creates the table of contents of {@code xarSource}.
+     *
+     * @param xarSource the {@link XarSource} to read from
+     * @param parser    a custom parser or {@code null} to use a built-in one
+     * @param streaming if {@code true} and no custom parser is given, the entries are created directly by a StAX based streaming parser
+     *                  instead of by simple-xml - {@link #getModel()} returns {@code null} then
+     * @throws XarException when there is an error while reading
+     */
+    public XarToc(final XarSource xarSource, final XarTocParser parser, final boolean streaming) throws XarException {
         this.xarSource = xarSource;
+        final XarMetrics metrics = xarSource.getMetrics();
+        final long start = metrics == XarMetrics.NONE ? 0L : System.nanoTime();
         try (final InputStream inputStream = xarSource.getToCStream()) {
-            this.model = parser != null ? parser.parse(inputStream) : TocFactory.fromInputStream(inputStream);
-            createEntries();
+            if (parser == null && streaming) {
+                this.model = null;
+                new StreamingTocParser(xarSource).parse(inputStream, this);
+            } else {
+                this.model = parser != null ? parser.parse(inputStream) : TocFactory.fromInputStream(inputStream);
+                createEntries();
+            }
         } catch (final Exception e) {
             throw new XarException("Could not create toc", e);
         }
+        if (metrics != XarMetrics.NONE) {
+            metrics.record(XarMetrics.Timer.TOC_PARSE, null, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Creates an empty table of contents of {@code xarSource}, to which entries are added by {@link #addEntry(XarEntry, String)}.
+     *
+     * @param xarSource the {@link XarSource} the entries belong to
+     */
+    XarToc(final XarSource xarSource) {
+        this.xarSource = xarSource;
+        this.model = null;
     }
 
     private void createEntries() throws XarException {
@@ -59,20 +103,35 @@ public class XarToc {
         }
     }
 
+    void addEntry(final XarEntry xarEntry, final String parentPath) {
+        addEntry(xarEntry);
+        addToParentEntry(xarEntry, parentPath);
+    }
+
     private void addEntry(final XarEntry xarEntry) {
         entries.add(xarEntry);
         nameToEntryMap.put(xarEntry.getName(), xarEntry);
+        pathIndex.put(xarEntry.getName(), xarEntry);
     }
 
     private void addToParentEntry(final XarEntry xarEntry, final String parentPath) {
         if (StringUtils.isEmpty(parentPath)) {
             // the entry itself is in the root entry
+            rootEntries.add(xarEntry);
             return;
         }
         final XarEntry parentEntry = nameToEntryMap.get(parentPath);
         parentEntry.addChild(xarEntry);
     }
 
+    /**
+     * @return the parsed table of contents model or {@code null} if the entries were created by the streaming parser or loaded from a
+     * {@link XarTocCache}
+     */
+    public ToC getModel() {
+        return model;
+    }
+
     public List<XarEntry> getEntries() {
         return entries;
     }
@@ -84,4 +143,37 @@ public class XarToc {
     public boolean hasEntry(final String entryName) {
         return nameToEntryMap.containsKey(entryName);
     }
+
+    /**
+     * Lists the direct children of the directory denoted by {@code path}.
+     *
+     * @param path the path of a directory, e.g. {@code directory/sub-directory}, or {@code null} or an empty string for the root
+     * @return the direct children of the directory, or an empty list if it does not exist or is not a directory
+     */
+    public List<XarEntry> listChildren(final String path) {
+        if (StringUtils.isEmpty(path)) {
+            return Collections.unmodifiableList(rootEntries);
+        }
+        final XarEntry entry = nameToEntryMap.get(path);
+        if (entry == null || entry.getChildren() == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(entry.getChildren());
+    }
+
+    /**
+     * Lists all entries below the directory denoted by {@code path}, recursively and sorted by their path.
+     * <p>
+     * This costs time in proportion to the size of the subtree, not to the size of the archive.
+     *
+     * @param path the path of a directory, e.g. {@code directory/sub-directory}, or {@code null} or an empty string for the root
+     * @return all descendants of the directory (excluding the directory itself), or an empty list if there are none
+     */
+    public List<XarEntry> walk(final String path) {
+        if (StringUtils.isEmpty(path)) {
+            return new ArrayList<>(pathIndex.values());
+        }
+        // all paths starting with "path/" are sorted between "path/" and "path0", as '0' follows '/'
+        return new ArrayList<>(pathIndex.subMap(path + '/', true, path + '0', false).values());
+    }
 }
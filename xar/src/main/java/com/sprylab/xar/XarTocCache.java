@@ -0,0 +1,230 @@
+package com.sprylab.xar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * A persistent cache for parsed tables of contents, which avoids inflating and parsing the XML when the same archive is opened again.
+ * <p>
+ * For each archive a compact binary index of its entries is stored in {@link #getDirectory() the cache directory}. The archive is
+ * identified by the checksum of its table of contents, which is stored at the start of the heap and thus costs a single small read.
+ * Archives without such a checksum are identified by a hash of the compressed table of contents instead.
+ * <p>
+ * Tables of contents loaded from the cache have no {@link XarToc#getModel() model}. Unreadable or outdated cache files are ignored and
+ * replaced. An instance may be shared by any number of {@link XarSource}s and threads, even across processes.
+ *
+ * @see XarSource#setTocCache(XarTocCache)
+ */
+public class XarTocCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XarTocCache.class);
+
+    /**
+     * Magic number for cache files: 'xtc!'
+     */
+    private static final int MAGIC = 0x78746321;
+
+    private static final int VERSION = 3;
+
+    private static final String FILE_SUFFIX = ".toc";
+
+    private final File directory;
+
+    /**
+     * Creates a cache storing its files in {@code directory}, which is created if necessary.
+     *
+     * @param directory the directory to store the cache files in
+     */
+    public XarTocCache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory the cache files are stored in
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Loads the table of contents of {@code xarSource} from the cache or creates and caches it if there is no usable cache file.
+     *
+     * @param xarSource the {@link XarSource} to get the table of contents of
+     * @param parser    a custom parser or {@code null} to use a built-in one, see {@link XarToc#XarToc(XarSource, XarTocParser, boolean)}
+     * @param streaming whether to use the streaming parser, see {@link XarToc#XarToc(XarSource, XarTocParser, boolean)}
+     * @return the table of contents of {@code xarSource}
+     * @throws XarException when there is an error while reading
+     */
+    XarToc getToc(final XarSource xarSource, final XarTocParser parser, final boolean streaming) throws XarException {
+        final XarHeader header = xarSource.getHeader();
+        final File cacheFile;
+        try {
+            cacheFile = new File(directory, createKey(xarSource, header) + FILE_SUFFIX);
+        } catch (final IOException e) {
+            throw new XarException("Error reading checksum of table of contents", e);
+        }
+
+        if (cacheFile.isFile()) {
+            try {
+                return read(cacheFile, xarSource, header);
+            } catch (final IOException | RuntimeException e) {
+                LOG.debug("Ignoring unusable toc cache file {}.", cacheFile, e);
+            }
+        }
+
+        final XarToc toc = new XarToc(xarSource, parser, streaming);
+        try {
+            write(cacheFile, toc, header);
+        } catch (final IOException e) {
+            LOG.warn("Could not write toc cache file {}.", cacheFile, e);
+        }
+        return toc;
+    }
+
+    private static String createKey(final XarSource xarSource, final XarHeader header) throws IOException {
+        final long tocOffset = header.getSize().longValue();
+        final long tocLength = header.getTocLengthCompressed().longValue();
+        long checksumLength;
+        try {
+            checksumLength = header.getChecksumAlgorithm().getDigestLength();
+        } catch (final IllegalArgumentException e) {
+            // unknown algorithms are handled like archives without a checksum
+            checksumLength = 0L;
+        }
+
+        final ByteString checksum;
+        if (checksumLength > 0L) {
+            // the checksum of the table of contents is stored at the start of the heap
+            try (final BufferedSource source = xarSource.openRange(tocOffset + tocLength, checksumLength)) {
+                checksum = source.readByteString();
+            }
+        } else {
+            try (final BufferedSource source = xarSource.openRange(tocOffset, tocLength)) {
+                checksum = source.readByteString().sha1();
+            }
+        }
+        return checksum.hex() + '-' + tocLength;
+    }
+
+    private static XarToc read(final File cacheFile, final XarSource xarSource, final XarHeader header) throws IOException {
+        try (final BufferedSource source = Okio.buffer(Okio.source(cacheFile))) {
+            if (source.readInt() != MAGIC || source.readInt() != VERSION) {
+                throw new IOException("Unsupported toc cache file.");
+            }
+            if (source.readLong() != header.getTocLengthCompressed().longValue()
+                || source.readLong() != header.getTocLengthUncompressed().longValue()) {
+                throw new IOException("Toc cache file belongs to a different archive.");
+            }
+
+            final XarToc toc = new XarToc(xarSource);
+            final int entryCount = source.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final XarEntry entry = new XarEntry();
+                entry.xarSource = xarSource;
+                entry.id = readString(source);
+                entry.name = readString(source);
+                entry.isDirectory = source.readByte() != 0;
+                entry.mode = readString(source);
+                entry.uid = readString(source);
+                entry.user = readString(source);
+                entry.gid = readString(source);
+                entry.group = readString(source);
+                entry.time = source.readByte() != 0 ? new Date(source.readLong()) : null;
+                final String checksumAlgorithm = readString(source);
+                entry.checksumAlgorithm = checksumAlgorithm != null ? ChecksumAlgorithm.valueOf(checksumAlgorithm) : null;
+                entry.checksum = readString(source);
+                final String archivedChecksumAlgorithm = readString(source);
+                entry.archivedChecksumAlgorithm = archivedChecksumAlgorithm != null ? ChecksumAlgorithm.valueOf(archivedChecksumAlgorithm) : null;
+                entry.archivedChecksum = readString(source);
+                entry.encodingStyle = readString(source);
+                entry.encoding = entry.encodingStyle != null ? EncodingEnumTransform.fromStyle(entry.encodingStyle) : null;
+                entry.size = source.readLong();
+                entry.offset = source.readLong();
+                entry.length = source.readLong();
+
+                // entries are written in the order they were added to the toc, so parents always precede their children
+                final int separatorIndex = entry.name.lastIndexOf('/');
+                toc.addEntry(entry, separatorIndex < 0 ? "" : entry.name.substring(0, separatorIndex));
+            }
+            return toc;
+        }
+    }
+
+    private void write(final File cacheFile, final XarToc toc, final XarHeader header) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        // write to a temporary file first, so that concurrent readers never see a partially written cache file
+        final File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+        try {
+            try (final BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+                sink.writeInt(MAGIC);
+                sink.writeInt(VERSION);
+                sink.writeLong(header.getTocLengthCompressed().longValue());
+                sink.writeLong(header.getTocLengthUncompressed().longValue());
+
+                final List<XarEntry> entries = toc.getEntries();
+                sink.writeInt(entries.size());
+                for (final XarEntry entry : entries) {
+                    writeString(sink, entry.id);
+                    writeString(sink, entry.name);
+                    sink.writeByte(entry.isDirectory ? 1 : 0);
+                    writeString(sink, entry.mode);
+                    writeString(sink, entry.uid);
+                    writeString(sink, entry.user);
+                    writeString(sink, entry.gid);
+                    writeString(sink, entry.group);
+                    sink.writeByte(entry.time != null ? 1 : 0);
+                    if (entry.time != null) {
+                        sink.writeLong(entry.time.getTime());
+                    }
+                    writeString(sink, entry.checksumAlgorithm != null ? entry.checksumAlgorithm.name() : null);
+                    writeString(sink, entry.checksum);
+                    writeString(sink, entry.archivedChecksumAlgorithm != null ? entry.archivedChecksumAlgorithm.name() : null);
+                    writeString(sink, entry.archivedChecksum);
+                    writeString(sink, entry.encodingStyle);
+                    sink.writeLong(entry.size);
+                    sink.writeLong(entry.offset);
+                    sink.writeLong(entry.length);
+                }
+            }
+            if (!tempFile.renameTo(cacheFile)) {
+                // another process may have written the same file in the meantime (renaming does not replace files on all platforms)
+                if (!cacheFile.delete() || !tempFile.renameTo(cacheFile)) {
+                    throw new IOException("Could not rename " + tempFile + " to " + cacheFile);
+                }
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private static void writeString(final BufferedSink sink, final String value) throws IOException {
+        if (value == null) {
+            sink.writeInt(-1);
+            return;
+        }
+        final ByteString bytes = ByteString.encodeUtf8(value);
+        sink.writeInt(bytes.size());
+        sink.write(bytes);
+    }
+
+    private static String readString(final BufferedSource source) throws IOException {
+        final int length = source.readInt();
+        return length < 0 ? null : source.readUtf8(length);
+    }
+}
@@ -0,0 +1,25 @@
+package com.sprylab.xar.cache;
+
+import okio.ByteString;
+
+/**
+ * A size-bounded cache for blocks of archive data used by {@link CachingXarSource}.
+ * <p>
+ * Implementations have to be thread-safe, as a cache may be shared by several sources and threads.
+ */
+public interface BlockCache {
+
+    /**
+     * @param key the key of the block
+     * @return the cached block or {@code null} if it is not cached
+     */
+    ByteString get(final String key);
+
+    /**
+     * Adds a block to the cache, possibly evicting other blocks.
+     *
+     * @param key   the key of the block
+     * @param block the block data
+     */
+    void put(final String key, final ByteString block);
+}
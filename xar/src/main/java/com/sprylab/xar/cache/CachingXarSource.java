@@ -0,0 +1,222 @@
+package com.sprylab.xar.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sprylab.xar.XarException;
+import com.sprylab.xar.XarSource;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * A {@link XarSource} wrapping another one, which serves range reads from blocks kept in a {@link BlockCache}.
+ * <p>
+ * The archive is divided into aligned blocks of {@link #getBlockSize()} bytes. Reading a range only reads the blocks it overlaps, which are
+ * fetched from the wrapped source on a cache miss. Consecutive blocks missing at once are fetched with a single range read of at most
+ * {@link #getMaxBlocksPerRead()} blocks. This is most useful for remote sources like {@code HttpXarSource}, as frequently read entries
+ * are then served locally.
+ * <p>
+ * The wrapped archive must not change while it is cached.
+ */
+public class CachingXarSource extends XarSource {
+
+    /**
+     * The default block size (64 KiB).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The default maximum number of blocks fetched with a single range read from the wrapped source.
+     */
+    public static final int DEFAULT_MAX_BLOCKS_PER_READ = 16;
+
+    private final XarSource delegate;
+
+    private final String cacheKey;
+
+    private final BlockCache blockCache;
+
+    private final int blockSize;
+
+    private final int maxBlocksPerRead;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile long size = -1L;
+
+    public CachingXarSource(final XarSource delegate, final String cacheKey, final BlockCache blockCache) {
+        this(delegate, cacheKey, blockCache, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS_PER_READ);
+    }
+
+    /**
+     * Creates a new caching source.
+     *
+     * @param delegate         the {@link XarSource} to read uncached blocks from
+     * @param cacheKey         a key identifying the archive, e.g. its URL, which prefixes the keys of its blocks in {@code blockCache}
+     * @param blockCache       the {@link BlockCache} to use, which may be shared with other sources
+     * @param blockSize        the size of a block in bytes
+     * @param maxBlocksPerRead the maximum number of consecutive missing blocks fetched with a single range read
+     */
+    public CachingXarSource(final XarSource delegate, final String cacheKey, final BlockCache blockCache, final int blockSize,
+                            final int maxBlocksPerRead) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize < 1: " + blockSize);
+        }
+        if (maxBlocksPerRead < 1) {
+            throw new IllegalArgumentException("maxBlocksPerRead < 1: " + maxBlocksPerRead);
+        }
+        this.delegate = delegate;
+        this.cacheKey = cacheKey;
+        this.blockCache = blockCache;
+        this.blockSize = blockSize;
+        this.maxBlocksPerRead = maxBlocksPerRead;
+    }
+
+    @Override
+    public BufferedSource getRange(final long offset, final long length) throws IOException {
+        if (offset < 0L || length < 0L || offset + length > getSize()) {
+            throw new EOFException(String.format("Range %d-%d exceeds archive size %d.", offset, offset + length, getSize()));
+        }
+        return Okio.buffer(new BlockSource(offset, offset + length));
+    }
+
+    @Override
+    public long getSize() throws XarException {
+        long result = size;
+        if (result < 0L) {
+            result = delegate.getSize();
+            size = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the block with index {@code blockIndex} from the cache or fetches it together with the following blocks up to
+     * {@code lastBlockIndex}, stopping at the first block which is already cached.
+     */
+    private ByteString getBlock(final long blockIndex, final long lastBlockIndex) throws IOException {
+        final ByteString cachedBlock = blockCache.get(getBlockKey(blockIndex));
+        if (cachedBlock != null) {
+            hitCount.incrementAndGet();
+            return cachedBlock;
+        }
+        missCount.incrementAndGet();
+
+        final long maxEndIndex = Math.min(lastBlockIndex, blockIndex + maxBlocksPerRead - 1L) + 1L;
+        long endIndex = blockIndex + 1L;
+        while (endIndex < maxEndIndex && blockCache.get(getBlockKey(endIndex)) == null) {
+            endIndex++;
+        }
+        final long start = blockIndex * blockSize;
+        final long end = Math.min(getSize(), endIndex * blockSize);
+        ByteString firstBlock = null;
+        try (final BufferedSource source = delegate.getRange(start, end - start)) {
+            for (long index = blockIndex; index * blockSize < end; index++) {
+                final ByteString block = source.readByteString(Math.min(blockSize, end - index * blockSize));
+                blockCache.put(getBlockKey(index), block);
+                if (firstBlock == null) {
+                    firstBlock = block;
+                }
+            }
+        }
+        return firstBlock;
+    }
+
+    private String getBlockKey(final long blockIndex) {
+        return cacheKey + '#' + blockSize + '#' + blockIndex;
+    }
+
+    /**
+     * @return the wrapped {@link XarSource}
+     */
+    public XarSource getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the size of a block in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the maximum number of consecutive missing blocks fetched with a single range read
+     */
+    public int getMaxBlocksPerRead() {
+        return maxBlocksPerRead;
+    }
+
+    /**
+     * @return the number of blocks which were found in the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of blocks which were not found in the cache and had to be fetched from the wrapped source
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingXarSource{delegate=%s}", delegate);
+    }
+
+    /**
+     * Reads a range block by block, getting each block only when it is needed.
+     */
+    private final class BlockSource implements Source {
+
+        private final long end;
+
+        private long position;
+
+        private ByteString block;
+
+        private long blockIndex = -1L;
+
+        private BlockSource(final long start, final long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public long read(final Buffer sink, final long byteCount) throws IOException {
+            if (position == end) {
+                return -1L;
+            }
+            final long currentBlockIndex = position / blockSize;
+            if (currentBlockIndex != blockIndex) {
+                block = getBlock(currentBlockIndex, (end - 1L) / blockSize);
+                blockIndex = currentBlockIndex;
+            }
+            final int blockOffset = (int) (position - currentBlockIndex * blockSize);
+            final int count = (int) Math.min(Math.min(byteCount, block.size() - blockOffset), end - position);
+            sink.write(block, blockOffset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+            block = null;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.sprylab.xar.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * A {@link BlockCache} storing one file per block in a directory, evicting the least recently used blocks when {@link #getMaxSize()}
+ * is exceeded.
+ * <p>
+ * Blocks written by earlier instances for the same directory are picked up, so the cache survives restarts. Read and write errors are
+ * logged and treated like a cache miss. The directory must not be shared by instances in different processes.
+ */
+public class DiskBlockCache implements BlockCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskBlockCache.class);
+
+    private static final String FILE_SUFFIX = ".block";
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * The sizes of all cached block files by file name, in access order.
+     */
+    private final LinkedHashMap<String, Long> fileSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * @param directory the directory to store the blocks in, which is created if necessary
+     * @param maxSize   the maximum number of bytes to store
+     */
+    public DiskBlockCache(final File directory, final long maxSize) {
+        if (maxSize < 0L) {
+            throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(final File file1, final File file2) {
+                    return Long.compare(file1.lastModified(), file2.lastModified());
+                }
+            });
+            for (final File file : files) {
+                if (file.isFile() && file.getName().endsWith(FILE_SUFFIX)) {
+                    fileSizes.put(file.getName(), file.length());
+                    size += file.length();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized ByteString get(final String key) {
+        final String fileName = getFileName(key);
+        if (fileSizes.get(fileName) == null) {
+            return null;
+        }
+        final File file = new File(directory, fileName);
+        try (final BufferedSource source = Okio.buffer(Okio.source(file))) {
+            final ByteString block = source.readByteString();
+            // keeps the access order across restarts
+            file.setLastModified(System.currentTimeMillis());
+            return block;
+        } catch (final IOException e) {
+            LOG.warn("Could not read cached block {}.", file, e);
+            remove(fileName);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void put(final String key, final ByteString block) {
+        if (block.size() > maxSize) {
+            return;
+        }
+        final String fileName = getFileName(key);
+        final File file = new File(directory, fileName);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            final File tempFile = new File(directory, fileName + ".tmp");
+            try (final BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+                sink.write(block);
+            }
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                tempFile.delete();
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not write cached block {}.", file, e);
+            remove(fileName);
+            return;
+        }
+
+        final Long previousSize = fileSizes.put(fileName, (long) block.size());
+        if (previousSize != null) {
+            size -= previousSize;
+        }
+        size += block.size();
+
+        final Iterator<Map.Entry<String, Long>> iterator = fileSizes.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            new File(directory, entry.getKey()).delete();
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(final String fileName) {
+        final Long fileSize = fileSizes.remove(fileName);
+        if (fileSize != null) {
+            size -= fileSize;
+        }
+        new File(directory, fileName).delete();
+    }
+
+    private static String getFileName(final String key) {
+        // keys may contain characters which are not allowed in file names
+        return ByteString.encodeUtf8(key).sha1().hex() + FILE_SUFFIX;
+    }
+
+    /**
+     * @return the directory the blocks are stored in
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the maximum number of bytes to store
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of bytes currently stored
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+}
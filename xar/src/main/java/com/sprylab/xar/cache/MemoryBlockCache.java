@@ -0,0 +1,66 @@
+package com.sprylab.xar.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okio.ByteString;
+
+/**
+ * A {@link BlockCache} keeping blocks in memory, evicting the least recently used ones when {@link #getMaxSize()} is exceeded.
+ */
+public class MemoryBlockCache implements BlockCache {
+
+    private final long maxSize;
+
+    private final LinkedHashMap<String, ByteString> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * @param maxSize the maximum number of bytes to keep in memory
+     */
+    public MemoryBlockCache(final long maxSize) {
+        if (maxSize < 0L) {
+            throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized ByteString get(final String key) {
+        return blocks.get(key);
+    }
+
+    @Override
+    public synchronized void put(final String key, final ByteString block) {
+        if (block.size() > maxSize) {
+            return;
+        }
+        final ByteString previousBlock = blocks.put(key, block);
+        if (previousBlock != null) {
+            size -= previousBlock.size();
+        }
+        size += block.size();
+
+        final Iterator<Map.Entry<String, ByteString>> iterator = blocks.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the maximum number of bytes kept in memory
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of bytes currently kept in memory
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,39 @@
+package com.sprylab.xar.cache;
+
+import okio.ByteString;
+
+/**
+ * A {@link BlockCache} combining a small, fast first level (usually a {@link MemoryBlockCache}) with a larger, slower second level
+ * (usually a {@link DiskBlockCache}).
+ * <p>
+ * Blocks are written to both levels. Blocks only found in the second level are copied to the first level when read.
+ */
+public class TieredBlockCache implements BlockCache {
+
+    private final BlockCache firstLevel;
+
+    private final BlockCache secondLevel;
+
+    public TieredBlockCache(final BlockCache firstLevel, final BlockCache secondLevel) {
+        this.firstLevel = firstLevel;
+        this.secondLevel = secondLevel;
+    }
+
+    @Override
+    public ByteString get(final String key) {
+        ByteString block = firstLevel.get(key);
+        if (block == null) {
+            block = secondLevel.get(key);
+            if (block != null) {
+                firstLevel.put(key, block);
+            }
+        }
+        return block;
+    }
+
+    @Override
+    public void put(final String key, final ByteString block) {
+        firstLevel.put(key, block);
+        secondLevel.put(key, block);
+    }
+}
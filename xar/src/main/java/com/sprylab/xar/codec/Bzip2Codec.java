@@ -0,0 +1,39 @@
+package com.sprylab.xar.codec;
+
+import java.io.IOException;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * A {@link XarCodec} for bzip2 compressed data.
+ */
+public class Bzip2Codec implements XarCodec {
+
+    @Override
+    public String getStyle() {
+        // the style written by the reference implementation
+        return EncodingEnumTransform.MIME_TYPE_BZIP2_2;
+    }
+
+    @Override
+    public boolean supportsStyle(final String style) {
+        return EncodingEnumTransform.MIME_TYPE_BZIP2_1.equals(style) || EncodingEnumTransform.MIME_TYPE_BZIP2_2.equals(style);
+    }
+
+    @Override
+    public Source decode(final Source source) throws IOException {
+        return Okio.source(new BZip2CompressorInputStream(Okio.buffer(source).inputStream()));
+    }
+
+    @Override
+    public Sink encode(final Sink sink) throws IOException {
+        return Okio.sink(new BZip2CompressorOutputStream(Okio.buffer(sink).outputStream()));
+    }
+}
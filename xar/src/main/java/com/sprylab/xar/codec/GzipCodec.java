@@ -0,0 +1,73 @@
+package com.sprylab.xar.codec;
+
+import java.util.zip.Deflater;
+
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+import okio.Sink;
+import okio.Source;
+
+/**
+ * A {@link XarCodec} for zlib compressed data, which xar calls gzip.
+ * <p>
+ * The compression level and strategy only affect encoding; data is decoded the same way regardless of how it was compressed.
+ * Inflaters and deflaters are taken from {@link ZlibPool#getDefault()} and returned when the source or sink is closed.
+ */
+public class GzipCodec implements XarCodec {
+
+    private final int level;
+
+    private final int strategy;
+
+    /**
+     * Creates a codec compressing with {@link Deflater#BEST_COMPRESSION} and {@link Deflater#DEFAULT_STRATEGY}.
+     */
+    public GzipCodec() {
+        this(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param level    the compression level from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION} or
+     *                 {@link Deflater#DEFAULT_COMPRESSION}
+     * @param strategy the compression strategy, e.g. {@link Deflater#FILTERED}
+     */
+    public GzipCodec(final int level, final int strategy) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid compression strategy: " + strategy);
+        }
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public String getStyle() {
+        return EncodingEnumTransform.MIME_TYPE_GZIP;
+    }
+
+    @Override
+    public Source decode(final Source source) {
+        return ZlibPool.getDefault().inflate(source);
+    }
+
+    @Override
+    public Sink encode(final Sink sink) {
+        return ZlibPool.getDefault().deflate(sink, level, strategy);
+    }
+
+    /**
+     * @return the compression level used for encoding
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the compression strategy used for encoding
+     */
+    public int getStrategy() {
+        return strategy;
+    }
+}
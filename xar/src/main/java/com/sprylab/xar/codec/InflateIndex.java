@@ -0,0 +1,267 @@
+package com.sprylab.xar.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * An index of checkpoints into a zlib stream, as written by {@link GzipCodec}, allowing to start inflating close to any uncompressed
+ * offset, like zlib's {@code zran.c}.
+ * <p>
+ * A checkpoint is recorded at the first deflate block boundary after every {@link #getSpan()} uncompressed bytes. It consists of the
+ * bit offset of the block and the 32 KiB of uncompressed data preceding it, so seeking to an offset inflates at most one span plus
+ * one block. As {@link java.util.zip.Inflater} cannot start at a bit offset, the data is inflated with a pure Java decoder.
+ * <p>
+ * Building an index inflates the whole stream once. Indexes can be {@link #write(BufferedSink) persisted} and {@link #read(BufferedSource)
+ * read} again, which takes roughly 32 KiB per checkpoint before compression.
+ */
+public final class InflateIndex {
+
+    /**
+     * The default number of uncompressed bytes between checkpoints (4 MiB).
+     */
+    public static final long DEFAULT_SPAN = 4L * 1024L * 1024L;
+
+    /**
+     * Magic number for persisted indexes: 'xii!'
+     */
+    private static final int MAGIC = 0x78696921;
+
+    private static final int VERSION = 1;
+
+    private static final int ZLIB_HEADER_LENGTH = 2;
+
+    private final long span;
+
+    private final long compressedSize;
+
+    private final long uncompressedSize;
+
+    private final List<Checkpoint> checkpoints;
+
+    private InflateIndex(final long span, final long compressedSize, final long uncompressedSize, final List<Checkpoint> checkpoints) {
+        this.span = span;
+        this.compressedSize = compressedSize;
+        this.uncompressedSize = uncompressedSize;
+        this.checkpoints = Collections.unmodifiableList(checkpoints);
+    }
+
+    /**
+     * Builds an index by inflating a whole zlib stream, verifying its Adler-32 checksum on the way.
+     *
+     * @param zlibSource the zlib stream, which is closed afterwards
+     * @param span       the minimum number of uncompressed bytes between checkpoints
+     * @return the index of {@code zlibSource}
+     * @throws IOException when an I/O error occurred while reading or the stream is invalid
+     */
+    public static InflateIndex build(final Source zlibSource, final long span) throws IOException {
+        if (span < 1L) {
+            throw new IllegalArgumentException("span < 1: " + span);
+        }
+        try (final BufferedSource source = Okio.buffer(zlibSource)) {
+            final int header = source.readShort() & 0xffff;
+            if ((header & 0x0f00) != 0x0800 || header % 31 != 0) {
+                throw new IOException("Invalid zlib header.");
+            }
+            if ((header & 0x20) != 0) {
+                throw new IOException("zlib streams with a preset dictionary are not supported.");
+            }
+
+            final RawInflater inflater = new RawInflater(source, ZLIB_HEADER_LENGTH, new byte[0], 0);
+            final List<Checkpoint> checkpoints = new ArrayList<>();
+            final Adler32 adler32 = new Adler32();
+            final byte[] buffer = new byte[8192];
+            while (true) {
+                if (inflater.isAtBlockBoundary()
+                    && (checkpoints.isEmpty() || inflater.getTotalOut() - checkpoints.get(checkpoints.size() - 1).uncompressedOffset >= span)) {
+                    checkpoints.add(inflater.getCheckpoint());
+                }
+                final int count = inflater.read(buffer, 0, buffer.length);
+                if (count == -1) {
+                    break;
+                }
+                adler32.update(buffer, 0, count);
+            }
+            if (inflater.readTrailerInt() != (int) adler32.getValue()) {
+                throw new IOException("Adler-32 checksum of inflated data does not match.");
+            }
+            return new InflateIndex(span, inflater.getInputPosition(), inflater.getTotalOut(), checkpoints);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(BufferedSink)}.
+     *
+     * @param source the source to read from
+     * @return the index read
+     * @throws IOException when an I/O error occurred while reading or the data is no index
+     */
+    public static InflateIndex read(final BufferedSource source) throws IOException {
+        if (source.readInt() != MAGIC || source.readInt() != VERSION) {
+            throw new IOException("Unsupported inflate index.");
+        }
+        final long span = source.readLong();
+        final long compressedSize = source.readLong();
+        final long uncompressedSize = source.readLong();
+        final int checkpointCount = source.readInt();
+        final List<Checkpoint> checkpoints = new ArrayList<>(checkpointCount);
+        for (int i = 0; i < checkpointCount; i++) {
+            final long uncompressedOffset = source.readLong();
+            final long compressedOffset = source.readLong();
+            final int bits = source.readByte();
+            final int windowLength = source.readInt();
+            final Buffer compressedWindow = new Buffer();
+            source.readFully(compressedWindow, source.readInt());
+            final byte[] window;
+            try (final BufferedSource windowSource = Okio.buffer(ZlibPool.getDefault().inflate(compressedWindow))) {
+                window = windowSource.readByteArray(windowLength);
+            }
+            checkpoints.add(new Checkpoint(uncompressedOffset, compressedOffset, bits, window));
+        }
+        return new InflateIndex(span, compressedSize, uncompressedSize, checkpoints);
+    }
+
+    /**
+     * Writes this index, compressing the windows of the checkpoints.
+     *
+     * @param sink the sink to write to
+     * @throws IOException when an I/O error occurred while writing
+     */
+    public void write(final BufferedSink sink) throws IOException {
+        sink.writeInt(MAGIC);
+        sink.writeInt(VERSION);
+        sink.writeLong(span);
+        sink.writeLong(compressedSize);
+        sink.writeLong(uncompressedSize);
+        sink.writeInt(checkpoints.size());
+        for (final Checkpoint checkpoint : checkpoints) {
+            sink.writeLong(checkpoint.uncompressedOffset);
+            sink.writeLong(checkpoint.compressedOffset);
+            sink.writeByte(checkpoint.bits);
+            sink.writeInt(checkpoint.window.length);
+            final Buffer compressedWindow = new Buffer();
+            try (final Sink windowSink = ZlibPool.getDefault().deflate(compressedWindow, Deflater.DEFAULT_COMPRESSION,
+                Deflater.DEFAULT_STRATEGY)) {
+                windowSink.write(new Buffer().write(checkpoint.window), checkpoint.window.length);
+            }
+            sink.writeInt((int) compressedWindow.size());
+            sink.writeAll(compressedWindow);
+        }
+    }
+
+    /**
+     * @param uncompressedOffset the uncompressed offset to start reading at
+     * @return the last checkpoint at or before {@code uncompressedOffset}
+     */
+    public Checkpoint getCheckpoint(final long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).uncompressedOffset <= uncompressedOffset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    /**
+     * Inflates the stream starting at {@code checkpoint}. The Adler-32 checksum of the stream is not verified.
+     *
+     * @param checkpoint a checkpoint of this index
+     * @param source     the zlib stream starting at {@link Checkpoint#getCompressedOffset()}, which is closed with the returned source
+     * @return a {@link Source} providing the uncompressed data from {@link Checkpoint#getUncompressedOffset()} on
+     * @throws IOException when an I/O error occurred while reading
+     */
+    public Source inflate(final Checkpoint checkpoint, final Source source) throws IOException {
+        return new RawInflater(Okio.buffer(source), checkpoint.compressedOffset, checkpoint.window, checkpoint.bits);
+    }
+
+    /**
+     * @return the minimum number of uncompressed bytes between checkpoints
+     */
+    public long getSpan() {
+        return span;
+    }
+
+    /**
+     * @return the size of the indexed zlib stream in bytes
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return the uncompressed size of the indexed zlib stream in bytes
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * @return the checkpoints ordered by their offsets, starting with one at the start of the stream
+     */
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InflateIndex{span=%d, compressedSize=%d, uncompressedSize=%d, checkpoints=%d}", span, compressedSize,
+            uncompressedSize, checkpoints.size());
+    }
+
+    /**
+     * A position in the zlib stream at which inflating can be started.
+     */
+    public static final class Checkpoint {
+
+        private final long uncompressedOffset;
+
+        private final long compressedOffset;
+
+        private final int bits;
+
+        private final byte[] window;
+
+        Checkpoint(final long uncompressedOffset, final long compressedOffset, final int bits, final byte[] window) {
+            this.uncompressedOffset = uncompressedOffset;
+            this.compressedOffset = compressedOffset;
+            this.bits = bits;
+            this.window = window;
+        }
+
+        /**
+         * @return the offset of the checkpoint in the uncompressed data
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * @return the offset of the byte containing the first bit of the checkpoint in the zlib stream
+         */
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        /**
+         * @return the number of bits of the byte at {@link #getCompressedOffset()} preceding the checkpoint, from 0 to 7
+         */
+        public int getBits() {
+            return bits;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.sprylab.xar.codec;
+
+import java.io.IOException;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * A {@link XarCodec} for data compressed in the LZ4 frame format, which decompresses considerably faster than gzip at the cost of a
+ * lower compression ratio.
+ * <p>
+ * Decoding is done by {@link Lz4FrameSource}, which decompresses whole blocks between arrays. Encoding uses commons-compress.
+ * <p>
+ * This encoding is not part of the xar specification, so archives using it can only be read by implementations which support it.
+ */
+public class Lz4Codec implements XarCodec {
+
+    /**
+     * The encoding style of LZ4 compressed data.
+     */
+    public static final String STYLE = "application/x-lz4";
+
+    @Override
+    public String getStyle() {
+        return STYLE;
+    }
+
+    @Override
+    public Source decode(final Source source) throws IOException {
+        return new Lz4FrameSource(Okio.buffer(source));
+    }
+
+    @Override
+    public Sink encode(final Sink sink) throws IOException {
+        return Okio.sink(new FramedLZ4CompressorOutputStream(Okio.buffer(sink).outputStream()));
+    }
+}
@@ -0,0 +1,301 @@
+package com.sprylab.xar.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Decodes data in the LZ4 frame format (see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">specification</a>).
+ * <p>
+ * Every block is read into an array and decompressed into another array in a single tight loop, which is where the speed of LZ4 comes
+ * from. Blocks which depend on previous blocks are decompressed behind the last 64 KiB of the data decompressed before. The arrays only
+ * grow to the size actually needed, so small entries do not allocate buffers of the maximum block size. Block and content checksums are
+ * verified if present. Like the decoder of commons-compress, only the first frame is decoded.
+ */
+final class Lz4FrameSource implements Source {
+
+    private static final int MAGIC = 0x184D2204;
+
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final int MIN_MATCH_LENGTH = 4;
+
+    private static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BufferedSource source;
+
+    private boolean headerRead;
+
+    private boolean finished;
+
+    private boolean blockIndependence;
+
+    private boolean blockChecksum;
+
+    private XxHash32 contentHash;
+
+    private int maxBlockSize;
+
+    private byte[] input = EMPTY;
+
+    private byte[] output = EMPTY;
+
+    private int outputStart;
+
+    private int outputEnd;
+
+    Lz4FrameSource(final BufferedSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public long read(final Buffer sink, final long byteCount) throws IOException {
+        if (byteCount < 0L) {
+            throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+        }
+        if (!headerRead) {
+            readFrameHeader();
+            headerRead = true;
+        }
+        while (outputStart == outputEnd) {
+            if (finished || !readBlock()) {
+                finished = true;
+                return -1L;
+            }
+        }
+        final int count = (int) Math.min(byteCount, outputEnd - outputStart);
+        sink.write(output, outputStart, count);
+        outputStart += count;
+        return count;
+    }
+
+    private void readFrameHeader() throws IOException {
+        int magic = source.readIntLe();
+        while ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+            source.skip(source.readIntLe() & 0xFFFFFFFFL);
+            magic = source.readIntLe();
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not in LZ4 frame format.");
+        }
+
+        final byte flags = source.readByte();
+        final byte blockDescriptor = source.readByte();
+        if ((flags & 0xC0) != 0x40) {
+            throw new IOException("Unsupported LZ4 frame version: " + ((flags & 0xC0) >>> 6));
+        }
+        if ((flags & 0x01) != 0) {
+            throw new IOException("LZ4 frames with a dictionary are not supported.");
+        }
+        final boolean hasContentSize = (flags & 0x08) != 0;
+        blockIndependence = (flags & 0x20) != 0;
+        blockChecksum = (flags & 0x10) != 0;
+        contentHash = (flags & 0x04) != 0 ? new XxHash32(0) : null;
+
+        final int blockSizeId = (blockDescriptor >>> 4) & 0x07;
+        if (blockSizeId < 4) {
+            throw new IOException("Invalid LZ4 maximum block size: " + blockSizeId);
+        }
+        maxBlockSize = 1 << (2 * blockSizeId + 8);
+
+        final Buffer descriptor = new Buffer().writeByte(flags).writeByte(blockDescriptor);
+        if (hasContentSize) {
+            // the content size is only a hint, the blocks are decoded until the end mark
+            source.readFully(descriptor, 8L);
+        }
+        final byte[] descriptorBytes = descriptor.readByteArray();
+        final int headerChecksum = source.readByte() & 0xFF;
+        if (headerChecksum != ((XxHash32.hash(descriptorBytes, 0, descriptorBytes.length, 0) >>> 8) & 0xFF)) {
+            throw new IOException("LZ4 frame descriptor checksum mismatch.");
+        }
+    }
+
+    /**
+     * Reads and decompresses the next block.
+     *
+     * @return {@code false} if the end of the frame has been reached
+     */
+    private boolean readBlock() throws IOException {
+        final int blockHeader = source.readIntLe();
+        if (blockHeader == 0) {
+            if (contentHash != null && !contentHash.matches(source.readIntLe())) {
+                throw new IOException("LZ4 content checksum mismatch.");
+            }
+            return false;
+        }
+
+        final int length = blockHeader & ~UNCOMPRESSED_FLAG;
+        if (length > maxBlockSize) {
+            throw new IOException("LZ4 block of " + length + " bytes exceeds the maximum block size of " + maxBlockSize + " bytes.");
+        }
+        if (input.length < length) {
+            input = new byte[Math.max(length, Math.min(maxBlockSize, input.length * 2))];
+        }
+        readFully(input, length);
+        if (blockChecksum) {
+            final XxHash32 blockHash = new XxHash32(0);
+            blockHash.update(input, 0, length);
+            if (!blockHash.matches(source.readIntLe())) {
+                throw new IOException("LZ4 block checksum mismatch.");
+            }
+        }
+
+        final int blockStart = keepHistory();
+        final int blockEnd;
+        if ((blockHeader & UNCOMPRESSED_FLAG) != 0) {
+            ensureOutputCapacity(blockStart + length, blockStart + maxBlockSize);
+            System.arraycopy(input, 0, output, blockStart, length);
+            blockEnd = blockStart + length;
+        } else {
+            blockEnd = decompress(length, blockStart);
+        }
+
+        if (contentHash != null) {
+            contentHash.update(output, blockStart, blockEnd - blockStart);
+        }
+        outputStart = blockStart;
+        outputEnd = blockEnd;
+        return true;
+    }
+
+    /**
+     * Moves the data dependent blocks may refer to to the start of the output.
+     *
+     * @return the offset in the output to decompress the next block to
+     */
+    private int keepHistory() {
+        if (blockIndependence) {
+            return 0;
+        }
+        final int historyLength = Math.min(WINDOW_SIZE, outputEnd);
+        System.arraycopy(output, outputEnd - historyLength, output, 0, historyLength);
+        return historyLength;
+    }
+
+    private void readFully(final byte[] data, final int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            final int read = source.read(data, offset, length - offset);
+            if (read == -1) {
+                throw new EOFException("LZ4 block ended " + (length - offset) + " bytes early.");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Decompresses a block in the LZ4 block format from {@link #input} to {@link #output}.
+     *
+     * @param inputLength the length of the compressed block
+     * @param blockStart  the offset in the output to decompress to, preceded by the data the block may refer to
+     * @return the end of the decompressed data in the output
+     */
+    private int decompress(final int inputLength, final int blockStart) throws IOException {
+        final byte[] in = input;
+        final int outputLimit = blockStart + maxBlockSize;
+        ensureOutputCapacity(Math.min(blockStart + Math.max(inputLength * 4, WINDOW_SIZE), outputLimit), outputLimit);
+        byte[] out = output;
+        int inputPosition = 0;
+        int outputPosition = blockStart;
+        while (true) {
+            if (inputPosition >= inputLength) {
+                throw corrupt();
+            }
+            final int token = in[inputPosition++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 0x0F) {
+                int value;
+                do {
+                    if (inputPosition >= inputLength) {
+                        throw corrupt();
+                    }
+                    value = in[inputPosition++] & 0xFF;
+                    literalLength += value;
+                } while (value == 0xFF);
+            }
+            if (literalLength > inputLength - inputPosition || literalLength > outputLimit - outputPosition) {
+                throw corrupt();
+            }
+            if (outputPosition + literalLength > out.length) {
+                out = ensureOutputCapacity(outputPosition + literalLength, outputLimit);
+            }
+            System.arraycopy(in, inputPosition, out, outputPosition, literalLength);
+            inputPosition += literalLength;
+            outputPosition += literalLength;
+
+            if (inputPosition == inputLength) {
+                // the last sequence only consists of literals
+                return outputPosition;
+            }
+
+            if (inputPosition > inputLength - 2) {
+                throw corrupt();
+            }
+            final int offset = (in[inputPosition] & 0xFF) | (in[inputPosition + 1] & 0xFF) << 8;
+            inputPosition += 2;
+
+            int matchLength = token & 0x0F;
+            if (matchLength == 0x0F) {
+                int value;
+                do {
+                    if (inputPosition >= inputLength) {
+                        throw corrupt();
+                    }
+                    value = in[inputPosition++] & 0xFF;
+                    matchLength += value;
+                } while (value == 0xFF);
+            }
+            matchLength += MIN_MATCH_LENGTH;
+
+            final int matchPosition = outputPosition - offset;
+            if (offset == 0 || matchPosition < (blockIndependence ? blockStart : 0) || matchLength > outputLimit - outputPosition) {
+                throw corrupt();
+            }
+            if (outputPosition + matchLength > out.length) {
+                out = ensureOutputCapacity(outputPosition + matchLength, outputLimit);
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(out, matchPosition, out, outputPosition, matchLength);
+            } else {
+                // the match overlaps the data being written, which repeats the last offset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    out[outputPosition + i] = out[matchPosition + i];
+                }
+            }
+            outputPosition += matchLength;
+        }
+    }
+
+    private byte[] ensureOutputCapacity(final int capacity, final int maxCapacity) {
+        if (output.length < capacity) {
+            output = Arrays.copyOf(output, Math.max(capacity, Math.min(maxCapacity, output.length * 2)));
+        }
+        return output;
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt LZ4 block.");
+    }
+
+    @Override
+    public Timeout timeout() {
+        return source.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.sprylab.xar.codec;
+
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+import okio.Sink;
+import okio.Source;
+
+/**
+ * A {@link XarCodec} for uncompressed data.
+ */
+public class NoneCodec implements XarCodec {
+
+    @Override
+    public String getStyle() {
+        return EncodingEnumTransform.MIME_TYPE_OCTET_STREAM;
+    }
+
+    @Override
+    public Source decode(final Source source) {
+        return source;
+    }
+
+    @Override
+    public Sink encode(final Sink sink) {
+        return sink;
+    }
+}
@@ -0,0 +1,509 @@
+package com.sprylab.xar.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * A decoder for raw deflate streams (RFC 1951), which, unlike {@link java.util.zip.Inflater}, can start decoding at any block
+ * boundary, given the bit offset of the block and the preceding 32 KiB of uncompressed data.
+ * <p>
+ * {@link #read(byte[], int, int)} stops at block boundaries, so callers can record {@link InflateIndex.Checkpoint}s there.
+ */
+final class RawInflater implements Source {
+
+    static final int WINDOW_SIZE = 32768;
+
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    private static final int MAX_BITS = 15;
+
+    /**
+     * Codes of up to this length are decoded with a single table lookup.
+     */
+    private static final int FAST_BITS = 9;
+
+    private static final int STATE_HEADER = 0;
+
+    private static final int STATE_STORED = 1;
+
+    private static final int STATE_HUFFMAN = 2;
+
+    private static final int STATE_DONE = 3;
+
+    private static final short[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+    };
+
+    private static final short[] LENGTH_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+
+    private static final short[] DISTANCE_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289,
+        16385, 24577
+    };
+
+    private static final short[] DISTANCE_EXTRA = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        final int[] lengths = new int[288];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+        }
+        final int[] distanceLengths = new int[30];
+        for (int i = 0; i < distanceLengths.length; i++) {
+            distanceLengths[i] = 5;
+        }
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, lengths.length);
+            FIXED_DISTANCES = new Huffman(distanceLengths, 0, distanceLengths.length);
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final BufferedSource source;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+
+    private final long initialHistory;
+
+    private long inputPosition;
+
+    private long bitBuffer;
+
+    private int bitCount;
+
+    private int windowPosition;
+
+    private long totalOut;
+
+    private int state = STATE_HEADER;
+
+    private boolean lastBlock;
+
+    private boolean boundaryReturned = true;
+
+    private Huffman literals;
+
+    private Huffman distances;
+
+    private int storedRemaining;
+
+    private int copyLength;
+
+    private int copyDistance;
+
+    private byte[] readBuffer;
+
+    /**
+     * @param source        the deflate stream starting with the byte containing the first bit of a block
+     * @param inputPosition the offset of the first byte of {@code source} in the deflate stream, which is only used for checkpoints
+     * @param window        up to {@link #WINDOW_SIZE} bytes of uncompressed data preceding the block
+     * @param bits          the number of bits of the first byte which belong to the preceding block, from 0 to 7
+     * @throws IOException when an I/O error occurred while reading the first byte
+     */
+    RawInflater(final BufferedSource source, final long inputPosition, final byte[] window, final int bits) throws IOException {
+        if (window.length > WINDOW_SIZE) {
+            throw new IllegalArgumentException("window too large: " + window.length);
+        }
+        this.source = source;
+        this.inputPosition = inputPosition;
+        System.arraycopy(window, 0, this.window, 0, window.length);
+        this.windowPosition = window.length & WINDOW_MASK;
+        this.initialHistory = window.length;
+        if (bits > 0) {
+            bits(bits);
+        }
+    }
+
+    /**
+     * @return {@code true} if decoding can be resumed at the current position from a {@link #getCheckpoint() checkpoint}
+     */
+    boolean isAtBlockBoundary() {
+        return state == STATE_HEADER && !lastBlock;
+    }
+
+    /**
+     * @return a checkpoint for the current position, which must be {@link #isAtBlockBoundary() a block boundary}
+     */
+    InflateIndex.Checkpoint getCheckpoint() {
+        final long bitPosition = inputPosition * 8L - bitCount;
+        final int size = (int) Math.min(totalOut + initialHistory, WINDOW_SIZE);
+        final byte[] history = new byte[size];
+        final int start = (windowPosition - size) & WINDOW_MASK;
+        final int firstPart = Math.min(size, WINDOW_SIZE - start);
+        System.arraycopy(window, start, history, 0, firstPart);
+        System.arraycopy(window, 0, history, firstPart, size - firstPart);
+        return new InflateIndex.Checkpoint(totalOut, bitPosition / 8L, (int) (bitPosition % 8L), history);
+    }
+
+    /**
+     * @return the number of bytes decoded so far
+     */
+    long getTotalOut() {
+        return totalOut;
+    }
+
+    /**
+     * @return the offset of the next unread byte in the deflate stream, which follows the final block once decoding is done
+     */
+    long getInputPosition() {
+        return inputPosition - bitCount / 8;
+    }
+
+    /**
+     * Reads the big-endian 32 bit value following the final block, like the Adler-32 checksum of a zlib stream.
+     *
+     * @return the value read
+     * @throws IOException when an I/O error occurred while reading
+     */
+    int readTrailerInt() throws IOException {
+        if (state != STATE_DONE) {
+            throw new IllegalStateException("The final block has not been decoded yet.");
+        }
+        drop(bitCount & 7);
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | bits(8);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes up to {@code byteCount} bytes, returning early at the end of each block, which may yield 0 bytes.
+     *
+     * @return the number of bytes decoded or -1 if the final block has been decoded
+     */
+    int read(final byte[] sink, final int offset, final int byteCount) throws IOException {
+        int produced = 0;
+        while (produced < byteCount) {
+            if (copyLength > 0) {
+                final int count = Math.min(copyLength, byteCount - produced);
+                for (int i = 0; i < count; i++) {
+                    final byte value = window[(windowPosition - copyDistance) & WINDOW_MASK];
+                    window[windowPosition] = value;
+                    windowPosition = (windowPosition + 1) & WINDOW_MASK;
+                    sink[offset + produced++] = value;
+                }
+                copyLength -= count;
+                totalOut += count;
+                continue;
+            }
+
+            switch (state) {
+                case STATE_HEADER:
+                    if (lastBlock) {
+                        state = STATE_DONE;
+                    } else if (produced > 0 || !boundaryReturned) {
+                        // return at each block boundary once, even if nothing has been decoded in this call
+                        boundaryReturned = true;
+                        return produced;
+                    } else {
+                        readBlockHeader();
+                        boundaryReturned = false;
+                    }
+                    break;
+                case STATE_STORED:
+                    if (storedRemaining == 0) {
+                        state = STATE_HEADER;
+                    } else {
+                        final int count = Math.min(storedRemaining, byteCount - produced);
+                        readStored(sink, offset + produced, count);
+                        produced += count;
+                        storedRemaining -= count;
+                        totalOut += count;
+                    }
+                    break;
+                case STATE_HUFFMAN:
+                    final int symbol = decode(literals);
+                    if (symbol < 256) {
+                        window[windowPosition] = (byte) symbol;
+                        windowPosition = (windowPosition + 1) & WINDOW_MASK;
+                        sink[offset + produced++] = (byte) symbol;
+                        totalOut++;
+                    } else if (symbol == 256) {
+                        state = STATE_HEADER;
+                    } else {
+                        readCopy(symbol - 257);
+                    }
+                    break;
+                default:
+                    return produced > 0 ? produced : -1;
+            }
+        }
+        return produced;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+        switch (bits(2)) {
+            case 0:
+                // stored blocks start at a byte boundary
+                drop(bitCount & 7);
+                final int length = bits(16);
+                if (bits(16) != (~length & 0xffff)) {
+                    throw new IOException("Invalid stored block length.");
+                }
+                storedRemaining = length;
+                state = STATE_STORED;
+                break;
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = STATE_HUFFMAN;
+                break;
+            case 2:
+                readDynamicTables();
+                state = STATE_HUFFMAN;
+                break;
+            default:
+                throw new IOException("Invalid block type.");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        final int literalCount = bits(5) + 257;
+        final int distanceCount = bits(5) + 1;
+        final int codeLengthCount = bits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) {
+            throw new IOException("Invalid number of codes.");
+        }
+
+        final int[] codeLengthLengths = new int[CODE_LENGTH_ORDER.length];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        final Huffman codeLengths = new Huffman(codeLengthLengths, 0, codeLengthLengths.length);
+
+        final int[] lengths = new int[literalCount + distanceCount];
+        int index = 0;
+        while (index < lengths.length) {
+            final int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+                continue;
+            }
+            int value = 0;
+            final int repeat;
+            if (symbol == 16) {
+                if (index == 0) {
+                    throw new IOException("Repeated code length without a previous length.");
+                }
+                value = lengths[index - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (index + repeat > lengths.length) {
+                throw new IOException("Too many code lengths.");
+            }
+            for (int i = 0; i < repeat; i++) {
+                lengths[index++] = value;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new IOException("Missing end-of-block code.");
+        }
+
+        literals = new Huffman(lengths, 0, literalCount);
+        distances = new Huffman(lengths, literalCount, distanceCount);
+    }
+
+    private void readCopy(final int lengthIndex) throws IOException {
+        if (lengthIndex >= LENGTH_BASE.length) {
+            throw new IOException("Invalid length code.");
+        }
+        final int length = LENGTH_BASE[lengthIndex] + bits(LENGTH_EXTRA[lengthIndex]);
+        final int distanceIndex = decode(distances);
+        if (distanceIndex >= DISTANCE_BASE.length) {
+            throw new IOException("Invalid distance code.");
+        }
+        final int distance = DISTANCE_BASE[distanceIndex] + bits(DISTANCE_EXTRA[distanceIndex]);
+        if (distance > totalOut + initialHistory) {
+            throw new IOException("Invalid distance too far back.");
+        }
+        copyLength = length;
+        copyDistance = distance;
+    }
+
+    private void readStored(final byte[] sink, final int offset, final int byteCount) throws IOException {
+        int count = 0;
+        // whole bytes may already have been read into the bit buffer
+        while (count < byteCount && bitCount >= 8) {
+            sink[offset + count++] = (byte) bits(8);
+        }
+        while (count < byteCount) {
+            final int read = source.read(sink, offset + count, byteCount - count);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of deflate stream.");
+            }
+            inputPosition += read;
+            count += read;
+        }
+
+        int position = offset;
+        int remaining = byteCount;
+        while (remaining > 0) {
+            final int length = Math.min(remaining, WINDOW_SIZE - windowPosition);
+            System.arraycopy(sink, position, window, windowPosition, length);
+            windowPosition = (windowPosition + length) & WINDOW_MASK;
+            position += length;
+            remaining -= length;
+        }
+    }
+
+    private int decode(final Huffman huffman) throws IOException {
+        fill(FAST_BITS);
+        final int entry = huffman.fast[(int) bitBuffer & ((1 << FAST_BITS) - 1)];
+        final int length = entry & 0xf;
+        if (entry != 0 && length <= bitCount) {
+            drop(length);
+            return entry >>> 4;
+        }
+
+        // canonical decoding bit by bit for long codes, see zlib's puff.c
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int len = 1; len <= MAX_BITS; len++) {
+            code |= bits(1);
+            final int count = huffman.counts[len];
+            if (code - count < first) {
+                return huffman.symbols[index + (code - first)];
+            }
+            index += count;
+            first = (first + count) << 1;
+            code <<= 1;
+        }
+        throw new IOException("Invalid Huffman code.");
+    }
+
+    /**
+     * Reads bytes into the bit buffer until it holds at least {@code count} bits or the stream is exhausted.
+     */
+    private boolean fill(final int count) throws IOException {
+        while (bitCount < count) {
+            if (!source.request(1L)) {
+                return false;
+            }
+            bitBuffer |= (source.readByte() & 0xffL) << bitCount;
+            bitCount += 8;
+            inputPosition++;
+        }
+        return true;
+    }
+
+    private int bits(final int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!fill(count)) {
+            throw new EOFException("Unexpected end of deflate stream.");
+        }
+        final int value = (int) (bitBuffer & ((1L << count) - 1L));
+        drop(count);
+        return value;
+    }
+
+    private void drop(final int count) {
+        bitBuffer >>>= count;
+        bitCount -= count;
+    }
+
+    @Override
+    public long read(final Buffer sink, final long byteCount) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = new byte[8192];
+        }
+        int count;
+        do {
+            count = read(readBuffer, 0, (int) Math.min(byteCount, readBuffer.length));
+        } while (count == 0 && byteCount > 0L);
+        if (count > 0) {
+            sink.write(readBuffer, 0, count);
+        }
+        return count;
+    }
+
+    @Override
+    public Timeout timeout() {
+        return source.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * A canonical Huffman code with a lookup table for short codes.
+     */
+    private static final class Huffman {
+
+        private final short[] counts = new short[MAX_BITS + 1];
+
+        private final short[] symbols;
+
+        /**
+         * Indexed by the next {@link #FAST_BITS} bits, holding {@code symbol << 4 | length} or 0 for longer codes.
+         */
+        private final short[] fast = new short[1 << FAST_BITS];
+
+        private Huffman(final int[] lengths, final int offset, final int count) throws IOException {
+            symbols = new short[count];
+            for (int i = 0; i < count; i++) {
+                counts[lengths[offset + i]]++;
+            }
+            counts[0] = 0;
+
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - counts[len];
+                if (left < 0) {
+                    throw new IOException("Over-subscribed Huffman code.");
+                }
+            }
+
+            final int[] offsets = new int[MAX_BITS + 2];
+            final int[] nextCodes = new int[MAX_BITS + 1];
+            int code = 0;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                offsets[len + 1] = offsets[len] + counts[len];
+                code = (code + counts[len - 1]) << 1;
+                nextCodes[len] = code;
+            }
+
+            for (int symbol = 0; symbol < count; symbol++) {
+                final int len = lengths[offset + symbol];
+                if (len == 0) {
+                    continue;
+                }
+                symbols[offsets[len]++] = (short) symbol;
+                final int symbolCode = nextCodes[len]++;
+                if (len <= FAST_BITS) {
+                    // codes are stored starting with their most significant bit, but the bit buffer is filled from the least significant one
+                    final int reversed = Integer.reverse(symbolCode) >>> (32 - len);
+                    for (int i = reversed; i < fast.length; i += 1 << len) {
+                        fast[i] = (short) (symbol << 4 | len);
+                    }
+                }
+            }
+        }
+    }
+}
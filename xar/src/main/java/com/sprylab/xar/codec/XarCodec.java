@@ -0,0 +1,46 @@
+package com.sprylab.xar.codec;
+
+import java.io.IOException;
+
+import okio.Sink;
+import okio.Source;
+
+/**
+ * Encodes and decodes the data of entries for an encoding style, i.e. the MIME type stored as {@code style} attribute of the
+ * {@code encoding} element in the table of contents.
+ * <p>
+ * Additional codecs are found with {@link java.util.ServiceLoader}, by listing their class names in
+ * {@code META-INF/services/com.sprylab.xar.codec.XarCodec}, or registered with {@link XarCodecs#register(XarCodec)}.
+ * Implementations have to be thread-safe.
+ */
+public interface XarCodec {
+
+    /**
+     * @return the encoding style written to the table of contents for data encoded by this codec
+     */
+    String getStyle();
+
+    /**
+     * Checks if this codec can decode data of the given encoding style, which may differ from {@link #getStyle()} for aliases.
+     *
+     * @param style the encoding style read from the table of contents
+     * @return {@code true} if data of this style can be decoded
+     */
+    default boolean supportsStyle(final String style) {
+        return getStyle().equals(style);
+    }
+
+    /**
+     * @param source the encoded data
+     * @return a {@link Source} decoding {@code source}, which closes {@code source} when closed
+     * @throws IOException when an I/O error occurred
+     */
+    Source decode(Source source) throws IOException;
+
+    /**
+     * @param sink the {@link Sink} to write the encoded data to
+     * @return a {@link Sink} encoding the data written to it, which finishes encoding and closes {@code sink} when closed
+     * @throws IOException when an I/O error occurred
+     */
+    Sink encode(Sink sink) throws IOException;
+}
@@ -0,0 +1,84 @@
+package com.sprylab.xar.codec;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+/**
+ * The registry of all {@link XarCodec}s available for reading and writing entries.
+ * <p>
+ * It contains codecs for the encodings of {@link Encoding} and {@link Lz4Codec}, followed by the codecs found with
+ * {@link ServiceLoader} and the ones registered with {@link #register(XarCodec)}. Later codecs take precedence over earlier ones
+ * supporting the same style, so built-in codecs can be overridden.
+ */
+public final class XarCodecs {
+
+    public static final XarCodec NONE = new NoneCodec();
+
+    public static final XarCodec GZIP = new GzipCodec();
+
+    public static final XarCodec BZIP2 = new Bzip2Codec();
+
+    public static final XarCodec LZ4 = new Lz4Codec();
+
+    private static final List<XarCodec> CODECS = new CopyOnWriteArrayList<>();
+
+    static {
+        CODECS.add(NONE);
+        CODECS.add(GZIP);
+        CODECS.add(BZIP2);
+        CODECS.add(LZ4);
+        for (final XarCodec codec : ServiceLoader.load(XarCodec.class)) {
+            CODECS.add(codec);
+        }
+    }
+
+    private XarCodecs() {
+    }
+
+    /**
+     * Registers {@code codec} after all other codecs. Codecs for the same styles are kept, but {@code codec} takes precedence over them
+     * until it is {@link #unregister(XarCodec) unregistered}.
+     *
+     * @param codec the {@link XarCodec} to register
+     */
+    public static void register(final XarCodec codec) {
+        CODECS.add(codec);
+    }
+
+    /**
+     * Removes all registrations of {@code codec}, so that the codecs it took precedence over are used again.
+     *
+     * @param codec the {@link XarCodec} to unregister
+     * @return {@code true} if {@code codec} was registered
+     */
+    public static boolean unregister(final XarCodec codec) {
+        return CODECS.removeIf(registeredCodec -> registeredCodec == codec);
+    }
+
+    /**
+     * @param style the encoding style read from the table of contents
+     * @return the {@link XarCodec} registered last for {@code style} or {@code null} if there is none
+     */
+    public static XarCodec forStyle(final String style) {
+        for (int i = CODECS.size() - 1; i >= 0; i--) {
+            final XarCodec codec = CODECS.get(i);
+            if (codec.supportsStyle(style)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param encoding the {@link Encoding} to get the codec for
+     * @return the {@link XarCodec} registered last for the style of {@code encoding}
+     * @throws IllegalArgumentException for {@link Encoding#OTHER}, whose style is not known
+     */
+    public static XarCodec forEncoding(final Encoding encoding) {
+        return forStyle(EncodingEnumTransform.toStyle(encoding));
+    }
+}
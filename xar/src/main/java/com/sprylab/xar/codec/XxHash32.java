@@ -0,0 +1,146 @@
+package com.sprylab.xar.codec;
+
+/**
+ * The 32 bit variant of the xxHash algorithm, which is used for the checksums of the LZ4 frame format.
+ */
+final class XxHash32 {
+
+    private static final int PRIME1 = 0x9E3779B1;
+
+    private static final int PRIME2 = 0x85EBCA77;
+
+    private static final int PRIME3 = 0xC2B2AE3D;
+
+    private static final int PRIME4 = 0x27D4EB2F;
+
+    private static final int PRIME5 = 0x165667B1;
+
+    private static final int STRIPE_LENGTH = 16;
+
+    private final byte[] pending = new byte[STRIPE_LENGTH];
+
+    private int pendingLength;
+
+    private long totalLength;
+
+    private int v1;
+
+    private int v2;
+
+    private int v3;
+
+    private int v4;
+
+    XxHash32(final int seed) {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+    }
+
+    /**
+     * Computes the hash of a range of {@code data} at once.
+     */
+    static int hash(final byte[] data, final int offset, final int length, final int seed) {
+        final XxHash32 xxHash32 = new XxHash32(seed);
+        xxHash32.update(data, offset, length);
+        return xxHash32.getValue();
+    }
+
+    void update(final byte[] data, final int offset, final int length) {
+        totalLength += length;
+        int position = offset;
+        final int end = offset + length;
+
+        if (pendingLength > 0) {
+            final int count = Math.min(STRIPE_LENGTH - pendingLength, length);
+            System.arraycopy(data, position, pending, pendingLength, count);
+            pendingLength += count;
+            position += count;
+            if (pendingLength < STRIPE_LENGTH) {
+                return;
+            }
+            processStripe(pending, 0);
+            pendingLength = 0;
+        }
+
+        // the stripes are processed with local variables, which is considerably faster than updating the fields
+        int acc1 = v1;
+        int acc2 = v2;
+        int acc3 = v3;
+        int acc4 = v4;
+        while (position <= end - STRIPE_LENGTH) {
+            acc1 = round(acc1, getIntLe(data, position));
+            acc2 = round(acc2, getIntLe(data, position + 4));
+            acc3 = round(acc3, getIntLe(data, position + 8));
+            acc4 = round(acc4, getIntLe(data, position + 12));
+            position += STRIPE_LENGTH;
+        }
+        v1 = acc1;
+        v2 = acc2;
+        v3 = acc3;
+        v4 = acc4;
+
+        pendingLength = end - position;
+        System.arraycopy(data, position, pending, 0, pendingLength);
+    }
+
+    int getValue() {
+        return getValue(totalLength >= STRIPE_LENGTH);
+    }
+
+    /**
+     * Checks {@code checksum} against the hash of the data so far.
+     * <p>
+     * commons-compress (at least up to 1.24) finishes the hash of exactly 16 bytes as if they were less than a stripe, so LZ4 frames
+     * it wrote for 16 bytes of content carry that value instead, which is accepted as well.
+     */
+    boolean matches(final int checksum) {
+        return checksum == getValue() || totalLength == STRIPE_LENGTH && checksum == getValue(false);
+    }
+
+    private int getValue(final boolean stripes) {
+        int hash;
+        if (stripes) {
+            hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            // v3 is still the seed unless a stripe has been processed
+            hash = v3 + PRIME5;
+        }
+        hash += (int) totalLength;
+
+        int position = 0;
+        while (position <= pendingLength - 4) {
+            hash += getIntLe(pending, position) * PRIME3;
+            hash = Integer.rotateLeft(hash, 17) * PRIME4;
+            position += 4;
+        }
+        while (position < pendingLength) {
+            hash += (pending[position] & 0xFF) * PRIME5;
+            hash = Integer.rotateLeft(hash, 11) * PRIME1;
+            position++;
+        }
+
+        hash ^= hash >>> 15;
+        hash *= PRIME2;
+        hash ^= hash >>> 13;
+        hash *= PRIME3;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private void processStripe(final byte[] data, final int offset) {
+        v1 = round(v1, getIntLe(data, offset));
+        v2 = round(v2, getIntLe(data, offset + 4));
+        v3 = round(v3, getIntLe(data, offset + 8));
+        v4 = round(v4, getIntLe(data, offset + 12));
+    }
+
+    private static int round(final int acc, final int input) {
+        return Integer.rotateLeft(acc + input * PRIME2, 13) * PRIME1;
+    }
+
+    private static int getIntLe(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,362 @@
+package com.sprylab.xar.codec;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * A bounded pool of {@link Inflater}s and {@link Deflater}s, which are backed by native zlib memory that is otherwise only freed by
+ * {@link Inflater#end()}/{@link Deflater#end()} or finalization.
+ * <p>
+ * The sources and sinks returned by {@link #inflate(Source)} and {@link #deflate(Sink, int, int)} return their instance to the pool
+ * when they are closed. At most {@link #getMaxIdle()} idle instances of each kind are kept; surplus instances are ended right away.
+ * Sources and sinks which are not closed keep their instance until it is finalized, as before.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ZlibPool {
+
+    /**
+     * The default maximum number of idle instances of each kind.
+     */
+    public static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ZlibPool DEFAULT = new ZlibPool(DEFAULT_MAX_IDLE);
+
+    private final int maxIdle;
+
+    private final ArrayDeque<Inflater> idleInflaters = new ArrayDeque<>();
+
+    private final ArrayDeque<Deflater> idleDeflaters = new ArrayDeque<>();
+
+    private final AtomicLong createdInflaterCount = new AtomicLong();
+
+    private final AtomicLong reusedInflaterCount = new AtomicLong();
+
+    private final AtomicLong endedInflaterCount = new AtomicLong();
+
+    private final AtomicLong createdDeflaterCount = new AtomicLong();
+
+    private final AtomicLong reusedDeflaterCount = new AtomicLong();
+
+    private final AtomicLong endedDeflaterCount = new AtomicLong();
+
+    /**
+     * @param maxIdle the maximum number of idle instances of each kind to keep
+     */
+    public ZlibPool(final int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle < 0: " + maxIdle);
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return the pool used by {@link GzipCodec} and for the table of contents
+     */
+    public static ZlibPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return an idle or new {@link Inflater}, which must be returned with {@link #release(Inflater)}
+     */
+    public Inflater acquireInflater() {
+        final Inflater inflater;
+        synchronized (idleInflaters) {
+            inflater = idleInflaters.pollFirst();
+        }
+        if (inflater != null) {
+            reusedInflaterCount.incrementAndGet();
+            return inflater;
+        }
+        createdInflaterCount.incrementAndGet();
+        return new Inflater();
+    }
+
+    /**
+     * Resets {@code inflater} and returns it to the pool, or ends it if the pool is full.
+     *
+     * @param inflater an {@link Inflater} which is no longer used
+     */
+    public void release(final Inflater inflater) {
+        inflater.reset();
+        synchronized (idleInflaters) {
+            if (idleInflaters.size() < maxIdle) {
+                idleInflaters.addFirst(inflater);
+                return;
+            }
+        }
+        inflater.end();
+        endedInflaterCount.incrementAndGet();
+    }
+
+    /**
+     * @param level    the compression level
+     * @param strategy the compression strategy
+     * @return an idle or new {@link Deflater} with the given settings, which must be returned with {@link #release(Deflater)}
+     */
+    public Deflater acquireDeflater(final int level, final int strategy) {
+        Deflater deflater;
+        synchronized (idleDeflaters) {
+            deflater = idleDeflaters.pollFirst();
+        }
+        if (deflater != null) {
+            reusedDeflaterCount.incrementAndGet();
+        } else {
+            createdDeflaterCount.incrementAndGet();
+            deflater = new Deflater();
+        }
+        // both take effect with the first call to deflate after a reset
+        deflater.setLevel(level);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * Resets {@code deflater} and returns it to the pool, or ends it if the pool is full.
+     *
+     * @param deflater a {@link Deflater} which is no longer used
+     */
+    public void release(final Deflater deflater) {
+        deflater.reset();
+        synchronized (idleDeflaters) {
+            if (idleDeflaters.size() < maxIdle) {
+                idleDeflaters.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+        endedDeflaterCount.incrementAndGet();
+    }
+
+    /**
+     * @param source the zlib compressed data
+     * @return a {@link Source} inflating {@code source} with a pooled {@link Inflater}, which is released when it is closed
+     */
+    public Source inflate(final Source source) {
+        return new PooledInflaterSource(source);
+    }
+
+    /**
+     * @param sink     the {@link Sink} to write the compressed data to
+     * @param level    the compression level
+     * @param strategy the compression strategy
+     * @return a {@link Sink} deflating with a pooled {@link Deflater}, which finishes the stream, closes {@code sink} and releases the
+     * deflater when it is closed
+     */
+    public Sink deflate(final Sink sink, final int level, final int strategy) {
+        return new PooledDeflaterSink(sink, acquireDeflater(level, strategy));
+    }
+
+    /**
+     * @return the maximum number of idle instances of each kind
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return the number of inflaters created because no idle one was available
+     */
+    public long getCreatedInflaterCount() {
+        return createdInflaterCount.get();
+    }
+
+    /**
+     * @return the number of times an idle inflater was reused
+     */
+    public long getReusedInflaterCount() {
+        return reusedInflaterCount.get();
+    }
+
+    /**
+     * @return the number of inflaters ended because the pool was full
+     */
+    public long getEndedInflaterCount() {
+        return endedInflaterCount.get();
+    }
+
+    /**
+     * @return the number of idle inflaters currently in the pool
+     */
+    public int getIdleInflaterCount() {
+        synchronized (idleInflaters) {
+            return idleInflaters.size();
+        }
+    }
+
+    /**
+     * @return the number of deflaters created because no idle one was available
+     */
+    public long getCreatedDeflaterCount() {
+        return createdDeflaterCount.get();
+    }
+
+    /**
+     * @return the number of times an idle deflater was reused
+     */
+    public long getReusedDeflaterCount() {
+        return reusedDeflaterCount.get();
+    }
+
+    /**
+     * @return the number of deflaters ended because the pool was full
+     */
+    public long getEndedDeflaterCount() {
+        return endedDeflaterCount.get();
+    }
+
+    /**
+     * @return the number of idle deflaters currently in the pool
+     */
+    public int getIdleDeflaterCount() {
+        synchronized (idleDeflaters) {
+            return idleDeflaters.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZlibPool{inflaters: created=%d, reused=%d, ended=%d, idle=%d; deflaters: created=%d, reused=%d, ended=%d, idle=%d}",
+            getCreatedInflaterCount(), getReusedInflaterCount(), getEndedInflaterCount(), getIdleInflaterCount(),
+            getCreatedDeflaterCount(), getReusedDeflaterCount(), getEndedDeflaterCount(), getIdleDeflaterCount());
+    }
+
+    /**
+     * Inflates with okio's {@link InflaterSource}, which is never closed itself, as that would end the inflater.
+     */
+    private final class PooledInflaterSource implements Source {
+
+        private final BufferedSource source;
+
+        private final Inflater inflater;
+
+        private final InflaterSource inflaterSource;
+
+        private boolean closed;
+
+        private PooledInflaterSource(final Source source) {
+            this.source = Okio.buffer(source);
+            this.inflater = acquireInflater();
+            this.inflaterSource = new InflaterSource(this.source, inflater);
+        }
+
+        @Override
+        public long read(final Buffer sink, final long byteCount) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+            return inflaterSource.read(sink, byteCount);
+        }
+
+        @Override
+        public Timeout timeout() {
+            return source.timeout();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                source.close();
+            } finally {
+                release(inflater);
+            }
+        }
+    }
+
+    /**
+     * A counterpart of okio's {@code DeflaterSink}, which releases instead of ending its deflater when closed.
+     */
+    private final class PooledDeflaterSink implements Sink {
+
+        private final Sink sink;
+
+        private final Deflater deflater;
+
+        private final byte[] input = new byte[BUFFER_SIZE];
+
+        private final byte[] output = new byte[BUFFER_SIZE];
+
+        private boolean closed;
+
+        private PooledDeflaterSink(final Sink sink, final Deflater deflater) {
+            this.sink = sink;
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(final Buffer source, final long byteCount) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+            long remaining = byteCount;
+            while (remaining > 0L) {
+                // the buffer holds at least byteCount bytes, so this always reads some
+                final int count = source.read(input, 0, (int) Math.min(remaining, input.length));
+                deflater.setInput(input, 0, count);
+                while (!deflater.needsInput()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                remaining -= count;
+            }
+        }
+
+        private int deflate(final int flush) throws IOException {
+            final int count = deflater.deflate(output, 0, output.length, flush);
+            if (count > 0) {
+                final Buffer buffer = new Buffer();
+                buffer.write(output, 0, count);
+                sink.write(buffer, count);
+            }
+            return count;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a full output buffer means there may be more data to flush
+            while (deflate(Deflater.SYNC_FLUSH) == output.length) {
+                // continue flushing
+            }
+            sink.flush();
+        }
+
+        @Override
+        public Timeout timeout() {
+            return sink.timeout();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                sink.close();
+            } finally {
+                release(deflater);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.sprylab.xar.metrics;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * A {@link Source} reporting the number of bytes read from it to a {@link XarMetrics.Counter}.
+ */
+public final class CountingSource extends ForwardingSource {
+
+    private final XarMetrics metrics;
+
+    private final XarMetrics.Counter counter;
+
+    /**
+     * @param delegate the {@link Source} to read from
+     * @param metrics  the {@link XarMetrics} to report to
+     * @param counter  the {@link XarMetrics.Counter} to increment by the number of bytes read
+     */
+    public CountingSource(final Source delegate, final XarMetrics metrics, final XarMetrics.Counter counter) {
+        super(delegate);
+        this.metrics = metrics;
+        this.counter = counter;
+    }
+
+    @Override
+    public long read(final Buffer sink, final long byteCount) throws IOException {
+        final long read = super.read(sink, byteCount);
+        if (read > 0L) {
+            metrics.increment(counter, read);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,122 @@
+package com.sprylab.xar.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link XarMetrics} aggregating all values in memory.
+ * <p>
+ * For every {@link Timer}, the number of measurements and their total and maximum duration are kept. Subjects are ignored.
+ * The values may be read at any time, while they are still being updated.
+ */
+public class InMemoryXarMetrics implements XarMetrics {
+
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private static final Timer[] TIMERS = Timer.values();
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+    private final AtomicLongArray timerCounts = new AtomicLongArray(TIMERS.length);
+
+    private final AtomicLongArray timerTotals = new AtomicLongArray(TIMERS.length);
+
+    private final AtomicLongArray timerMaximums = new AtomicLongArray(TIMERS.length);
+
+    @Override
+    public void increment(final Counter counter, final long amount) {
+        counters.addAndGet(counter.ordinal(), amount);
+    }
+
+    @Override
+    public void record(final Timer timer, final String subject, final long durationNanos) {
+        final int index = timer.ordinal();
+        timerCounts.incrementAndGet(index);
+        timerTotals.addAndGet(index, durationNanos);
+        long maximum = timerMaximums.get(index);
+        while (durationNanos > maximum && !timerMaximums.compareAndSet(index, maximum, durationNanos)) {
+            maximum = timerMaximums.get(index);
+        }
+    }
+
+    /**
+     * @param counter the {@link Counter} to get
+     * @return the current value of {@code counter}
+     */
+    public long get(final Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * @param timer the {@link Timer} to get
+     * @return the number of measurements recorded for {@code timer}
+     */
+    public long getCount(final Timer timer) {
+        return timerCounts.get(timer.ordinal());
+    }
+
+    /**
+     * @param timer the {@link Timer} to get
+     * @param unit  the {@link TimeUnit} of the result
+     * @return the sum of all durations recorded for {@code timer}
+     */
+    public long getTotalTime(final Timer timer, final TimeUnit unit) {
+        return unit.convert(timerTotals.get(timer.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param timer the {@link Timer} to get
+     * @param unit  the {@link TimeUnit} of the result
+     * @return the longest duration recorded for {@code timer} or {@code 0} if there is none
+     */
+    public long getMaxTime(final Timer timer, final TimeUnit unit) {
+        return unit.convert(timerMaximums.get(timer.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param timer the {@link Timer} to get
+     * @param unit  the {@link TimeUnit} of the result
+     * @return the average duration recorded for {@code timer} or {@code 0} if there is none
+     */
+    public long getMeanTime(final Timer timer, final TimeUnit unit) {
+        final long count = getCount(timer);
+        return count == 0L ? 0L : unit.convert(timerTotals.get(timer.ordinal()) / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets all counters and timers back to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counters.set(i, 0L);
+        }
+        for (int i = 0; i < TIMERS.length; i++) {
+            timerCounts.set(i, 0L);
+            timerTotals.set(i, 0L);
+            timerMaximums.set(i, 0L);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("InMemoryXarMetrics{");
+        String separator = "";
+        for (final Counter counter : COUNTERS) {
+            final long value = get(counter);
+            if (value != 0L) {
+                builder.append(separator).append(counter).append('=').append(value);
+                separator = ", ";
+            }
+        }
+        for (final Timer timer : TIMERS) {
+            final long count = getCount(timer);
+            if (count != 0L) {
+                builder.append(separator).append(timer).append(String.format("={count=%d, total=%dus, mean=%dus, max=%dus}", count,
+                    getTotalTime(timer, TimeUnit.MICROSECONDS), getMeanTime(timer, TimeUnit.MICROSECONDS),
+                    getMaxTime(timer, TimeUnit.MICROSECONDS)));
+                separator = ", ";
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,126 @@
+package com.sprylab.xar.metrics;
+
+/**
+ * Receives counters and timings from the hot paths of a {@link com.sprylab.xar.XarSource} or {@link com.sprylab.xar.writer.XarSink}.
+ * <p>
+ * By default, sources and sinks report to {@link #NONE}. As long as that is the case, nothing is measured at all: no clock is read and no
+ * source is wrapped, so disabled metrics cost a single reference comparison per operation.
+ * <p>
+ * Implementations have to be thread-safe and fast, as they are called from extraction worker threads and while data is being read.
+ * See {@link InMemoryXarMetrics} for an implementation aggregating all values in memory.
+ */
+public interface XarMetrics {
+
+    /**
+     * Discards all values. Sources and sinks skip measuring entirely when this instance is set.
+     */
+    XarMetrics NONE = new XarMetrics() {
+
+        @Override
+        public void increment(final Counter counter, final long amount) {
+        }
+
+        @Override
+        public void record(final Timer timer, final String subject, final long durationNanos) {
+        }
+
+        @Override
+        public String toString() {
+            return "XarMetrics.NONE";
+        }
+    };
+
+    /**
+     * Adds {@code amount} to {@code counter}.
+     *
+     * @param counter the {@link Counter} to increment
+     * @param amount  the amount to add
+     */
+    void increment(final Counter counter, final long amount);
+
+    /**
+     * Records a single measurement of {@code timer}.
+     *
+     * @param timer         the {@link Timer} that was measured
+     * @param subject       what was measured, e.g. the name of an entry or the requested range, or {@code null}
+     * @param durationNanos the duration in nanoseconds
+     */
+    void record(final Timer timer, final String subject, final long durationNanos);
+
+    /**
+     * The counted quantities.
+     */
+    enum Counter {
+
+        /**
+         * Calls to {@link com.sprylab.xar.XarSource#getRange(long, long)} made by the library.
+         */
+        RANGE_REQUESTS,
+
+        /**
+         * Raw bytes read from ranges of the archive, including bytes copied directly to extracted files.
+         */
+        BYTES_READ,
+
+        /**
+         * Bytes produced by decoding entry data, see {@link com.sprylab.xar.codec.XarCodec}.
+         */
+        BYTES_DECODED,
+
+        /**
+         * Entries extracted to a file, successfully or not.
+         */
+        ENTRIES_EXTRACTED,
+
+        /**
+         * HTTP requests executed, including requests for the size of the archive.
+         */
+        HTTP_REQUESTS,
+
+        /**
+         * Bytes of HTTP response bodies read.
+         */
+        HTTP_BYTES_RECEIVED,
+
+        /**
+         * Entries written to an archive.
+         */
+        ENTRIES_WRITTEN,
+
+        /**
+         * Bytes written to an archive, including the header and the table of contents.
+         */
+        BYTES_WRITTEN
+    }
+
+    /**
+     * The timed operations.
+     */
+    enum Timer {
+
+        /**
+         * Reading and parsing the table of contents. Not recorded if it is loaded from a {@link com.sprylab.xar.XarTocCache}.
+         */
+        TOC_PARSE,
+
+        /**
+         * Extracting an entry to a file, with the entry name as subject.
+         */
+        ENTRY_EXTRACTION,
+
+        /**
+         * Executing an HTTP request until the response headers have been received, with the requested range as subject.
+         */
+        HTTP_REQUEST,
+
+        /**
+         * Copying the (encoded) data of an entry to an archive, with the entry name as subject.
+         */
+        ENTRY_WRITE,
+
+        /**
+         * Writing a complete archive.
+         */
+        ARCHIVE_WRITE
+    }
+}
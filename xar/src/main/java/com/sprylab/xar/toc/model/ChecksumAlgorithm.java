@@ -1,9 +1,70 @@
 package com.sprylab.xar.toc.model;
 
+import java.util.Locale;
+
+/**
+ * The checksum algorithms supported for entries and the table of contents.
+ * <p>
+ * The xar header only has ids for {@link #SHA1} and {@link #MD5}. Other algorithms are stored with the id
+ * {@link #HEADER_ID_OTHER} followed by their {@link #getXarName() name}, as done by xar 1.6 and later.
+ */
 public enum ChecksumAlgorithm {
 
-    NONE,
-    SHA1,
-    MD5
+    NONE(0, 0),
+    SHA1(1, 20),
+    MD5(2, 16),
+    SHA256(ChecksumAlgorithm.HEADER_ID_OTHER, 32),
+    SHA512(ChecksumAlgorithm.HEADER_ID_OTHER, 64);
+
+    /**
+     * The header id of algorithms which are identified by their name following the header.
+     */
+    public static final int HEADER_ID_OTHER = 3;
+
+    private final int headerId;
+
+    private final int digestLength;
+
+    ChecksumAlgorithm(final int headerId, final int digestLength) {
+        this.headerId = headerId;
+        this.digestLength = digestLength;
+    }
+
+    /**
+     * @return the id of this algorithm in the xar header
+     */
+    public int getHeaderId() {
+        return headerId;
+    }
+
+    /**
+     * @return the length of a checksum in bytes
+     */
+    public int getDigestLength() {
+        return digestLength;
+    }
+
+    /**
+     * @return the name of this algorithm in the table of contents and the xar header, e.g. {@code sha256}
+     */
+    public String getXarName() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
 
+    /**
+     * Gets the algorithm stored in a xar header.
+     *
+     * @param headerId the id stored in the header
+     * @param name     the name following the header for {@link #HEADER_ID_OTHER}, may be {@code null} otherwise
+     * @return the matching {@link ChecksumAlgorithm}
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public static ChecksumAlgorithm fromHeader(final int headerId, final String name) {
+        for (final ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.headerId == headerId && (headerId != HEADER_ID_OTHER || algorithm.getXarName().equalsIgnoreCase(name))) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported checksum algorithm %d (%s).", headerId, name));
+    }
 }
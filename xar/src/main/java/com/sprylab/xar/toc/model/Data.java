@@ -19,7 +19,7 @@ public class Data {
 
     @Path("encoding")
     @Attribute(name = "style", required = false)
-    private Encoding encoding = Encoding.NONE;
+    private String encodingStyle = EncodingEnumTransform.MIME_TYPE_OCTET_STREAM;
 
     @Element
     private long size;
@@ -55,11 +55,22 @@ public class Data {
     }
 
     public Encoding getEncoding() {
-        return encoding;
+        return EncodingEnumTransform.fromStyle(encodingStyle);
     }
 
     public void setEncoding(final Encoding encoding) {
-        this.encoding = encoding;
+        this.encodingStyle = EncodingEnumTransform.toStyle(encoding);
+    }
+
+    /**
+     * @return the MIME type the data is encoded with, e.g. {@code application/x-gzip}
+     */
+    public String getEncodingStyle() {
+        return encodingStyle;
+    }
+
+    public void setEncodingStyle(final String encodingStyle) {
+        this.encodingStyle = encodingStyle;
     }
 
     public long getSize() {
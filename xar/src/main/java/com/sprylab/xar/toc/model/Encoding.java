@@ -4,6 +4,10 @@ public enum Encoding {
 
     NONE,
     GZIP,
-    BZIP2
+    BZIP2,
+    /**
+     * Any other encoding style, which is handled by a {@link com.sprylab.xar.codec.XarCodec} registered for it.
+     */
+    OTHER
 
 }
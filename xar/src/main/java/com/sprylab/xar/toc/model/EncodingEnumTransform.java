@@ -1,7 +1,5 @@
 package com.sprylab.xar.toc.model;
 
-import java.io.UnsupportedEncodingException;
-
 import org.simpleframework.xml.transform.Transform;
 
 /**
@@ -18,29 +16,51 @@ public class EncodingEnumTransform implements Transform<Encoding> {
 
     @Override
     public Encoding read(final String value) throws Exception {
-        if (value.equals(MIME_TYPE_OCTET_STREAM)) {
+        return fromStyle(value);
+    }
+
+    @Override
+    public String write(final Encoding value) throws Exception {
+        return toStyle(value);
+    }
+
+    /**
+     * Maps an encoding style of a xar file to an {@link Encoding}.
+     *
+     * @param style the MIME type used as encoding style
+     * @return the corresponding {@link Encoding} or {@link Encoding#OTHER} for styles without a constant
+     */
+    public static Encoding fromStyle(final String style) {
+        if (style.equals(MIME_TYPE_OCTET_STREAM)) {
             return Encoding.NONE;
         }
-        if (value.equals(MIME_TYPE_GZIP)) {
+        if (style.equals(MIME_TYPE_GZIP)) {
             return Encoding.GZIP;
         }
-        if (value.equals(MIME_TYPE_BZIP2_1) || value.equals(MIME_TYPE_BZIP2_2)) {
+        if (style.equals(MIME_TYPE_BZIP2_1) || style.equals(MIME_TYPE_BZIP2_2)) {
             return Encoding.BZIP2;
         }
-        return Encoding.NONE;
+        return Encoding.OTHER;
     }
 
-    @Override
-    public String write(final Encoding value) throws Exception {
-        switch (value) {
+    /**
+     * Maps an {@link Encoding} to the encoding style written to xar files.
+     *
+     * @param encoding the {@link Encoding} to map
+     * @return the MIME type used as encoding style
+     * @throws IllegalArgumentException for {@link Encoding#OTHER}, whose style is not known
+     */
+    public static String toStyle(final Encoding encoding) {
+        switch (encoding) {
             case GZIP:
                 return MIME_TYPE_GZIP;
             case BZIP2:
-                return MIME_TYPE_BZIP2_1;
+                // the style written by the reference implementation
+                return MIME_TYPE_BZIP2_2;
             case NONE:
                 return MIME_TYPE_OCTET_STREAM;
             default:
-                throw new UnsupportedEncodingException("Encoding not supported: " + value.name());
+                throw new IllegalArgumentException("Encoding has no style: " + encoding.name());
         }
     }
 }
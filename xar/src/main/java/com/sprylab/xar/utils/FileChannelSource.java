@@ -0,0 +1,64 @@
+package com.sprylab.xar.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import okio.Timeout;
+
+/**
+ * Supplies a stream of bytes from a region of an underlying {@link FileChannel} using positional reads.
+ * <p>
+ * The channel's position is never modified, so any number of {@link FileChannelSource}s may read from the same channel concurrently.
+ * Closing this source does <strong>not</strong> close the channel, as it is usually shared.
+ */
+public class FileChannelSource extends RangeSource {
+
+    private final FileChannel channel;
+
+    private long position;
+
+    private boolean closed;
+
+    /**
+     * Creates a new {@link FileChannelSource}, which reads the {@code channel} starting from {@code offset} until {@code length} bytes are read.
+     *
+     * @param channel the channel to read from
+     * @param offset  the offset in bytes to start reading from
+     * @param length  the number of bytes to read
+     */
+    public FileChannelSource(final FileChannel channel, final long offset, final long length) {
+        this(channel, offset, length, new Timeout());
+    }
+
+    /**
+     * Creates a new {@link FileChannelSource}, which reads the {@code channel} starting from {@code offset} until {@code length} bytes are read.
+     *
+     * @param channel the channel to read from
+     * @param offset  the offset in bytes to start reading from
+     * @param length  the number of bytes to read
+     * @param timeout the timeout to use
+     */
+    public FileChannelSource(final FileChannel channel, final long offset, final long length, final Timeout timeout) {
+        super(length, timeout);
+        this.channel = channel;
+        this.position = offset;
+    }
+
+    @Override
+    protected int read(final byte[] data, final int offset, final int byteCount) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        final int bytesRead = channel.read(ByteBuffer.wrap(data, offset, byteCount), position);
+        if (bytesRead > 0) {
+            position += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
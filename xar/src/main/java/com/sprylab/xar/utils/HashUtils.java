@@ -1,12 +1,27 @@
 package com.sprylab.xar.utils;
 
+import java.io.IOException;
+
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 
+import okio.BufferedSink;
 import okio.BufferedSource;
 import okio.ByteString;
+import okio.HashingSink;
+import okio.HashingSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
 
 /**
  * Utility class for easily hashing {@link BufferedSource}s.
+ * <p>
+ * The {@code hash} methods only hash the data which is already buffered and leave it unconsumed, so callers have to buffer all data
+ * beforehand. To hash data of any size with constant memory, use {@link #digest(Source, ChecksumAlgorithm)} or hash the data while it is
+ * copied with {@link #hashingSink(Sink, ChecksumAlgorithm)} or {@link #hashingSource(Source, ChecksumAlgorithm)}.
+ * <p>
+ * All hashes are computed with the JDK's {@link java.security.MessageDigest} implementations, which the JVM accelerates with CPU
+ * instructions where available.
  */
 public final class HashUtils {
 
@@ -28,6 +43,10 @@ public final class HashUtils {
                 return sha1(source);
             case MD5:
                 return md5(source);
+            case SHA256:
+                return source.buffer().sha256();
+            case SHA512:
+                return source.buffer().sha512();
         }
         throw new UnsupportedOperationException("Unsupported checksum algorithm " + algorithm.name());
     }
@@ -46,6 +65,101 @@ public final class HashUtils {
         return hash(source, algorithm).hex();
     }
 
+    /**
+     * Wraps {@code sink} in a {@link HashingSink} which hashes all data written through it.
+     *
+     * @param sink      the {@link Sink} to write to
+     * @param algorithm the {@link ChecksumAlgorithm} to use
+     * @return a {@link HashingSink} or {@code null} if <code>algorithm == ChecksumAlgorithm.NONE</code>
+     */
+    public static HashingSink hashingSink(final Sink sink, final ChecksumAlgorithm algorithm) {
+        switch (algorithm) {
+            case NONE:
+                return null;
+            case SHA1:
+                return HashingSink.sha1(sink);
+            case MD5:
+                return HashingSink.md5(sink);
+            case SHA256:
+                return HashingSink.sha256(sink);
+            case SHA512:
+                return HashingSink.sha512(sink);
+        }
+        throw new UnsupportedOperationException("Unsupported checksum algorithm " + algorithm.name());
+    }
+
+    /**
+     * Wraps {@code source} in a {@link HashingSource} which hashes all data read through it.
+     *
+     * @param source    the {@link Source} to read from
+     * @param algorithm the {@link ChecksumAlgorithm} to use
+     * @return a {@link HashingSource} or {@code null} if <code>algorithm == ChecksumAlgorithm.NONE</code>
+     */
+    public static HashingSource hashingSource(final Source source, final ChecksumAlgorithm algorithm) {
+        switch (algorithm) {
+            case NONE:
+                return null;
+            case SHA1:
+                return HashingSource.sha1(source);
+            case MD5:
+                return HashingSource.md5(source);
+            case SHA256:
+                return HashingSource.sha256(source);
+            case SHA512:
+                return HashingSource.sha512(source);
+        }
+        throw new UnsupportedOperationException("Unsupported checksum algorithm " + algorithm.name());
+    }
+
+    /**
+     * Reads {@code source} to its end and hashes its data incrementally, without holding more than a segment in memory.
+     * The source is not closed.
+     *
+     * @param source    the {@link Source} to hash
+     * @param algorithm the {@link ChecksumAlgorithm} to use
+     * @return the calculated hash corresponding to <code>algorithm</code> or null if <code>algorithm == ChecksumAlgorithm.NONE</code>
+     * @throws IOException when an I/O error occurred while reading
+     */
+    public static ByteString digest(final Source source, final ChecksumAlgorithm algorithm) throws IOException {
+        final HashingSink hashingSink = hashingSink(Okio.blackhole(), algorithm);
+        if (hashingSink == null) {
+            return null;
+        }
+        try (final BufferedSink sink = Okio.buffer(hashingSink)) {
+            sink.writeAll(source);
+        }
+        return hashingSink.hash();
+    }
+
+    /**
+     * Reads {@code source} to its end and hashes its data incrementally, see {@link #digest(Source, ChecksumAlgorithm)}.
+     *
+     * @param source    the {@link Source} to hash
+     * @param algorithm the {@link ChecksumAlgorithm} to use
+     * @return the calculated hash encoded in hexadecimal or null if <code>algorithm == ChecksumAlgorithm.NONE</code>
+     * @throws IOException when an I/O error occurred while reading
+     */
+    public static String digestHex(final Source source, final ChecksumAlgorithm algorithm) throws IOException {
+        final ByteString hash = digest(source, algorithm);
+        return hash != null ? hash.hex() : null;
+    }
+
+    /**
+     * @param hashingSink a {@link HashingSink} as returned by {@link #hashingSink(Sink, ChecksumAlgorithm)}
+     * @return the hash of the data written so far encoded in hexadecimal or {@code null} if {@code hashingSink} is {@code null}
+     */
+    public static String hashHex(final HashingSink hashingSink) {
+        return hashingSink != null ? hashingSink.hash().hex() : null;
+    }
+
+    /**
+     * @param hashingSource a {@link HashingSource} as returned by {@link #hashingSource(Source, ChecksumAlgorithm)}
+     * @return the hash of the data read so far encoded in hexadecimal or {@code null} if {@code hashingSource} is {@code null}
+     */
+    public static String hashHex(final HashingSource hashingSource) {
+        return hashingSource != null ? hashingSource.hash().hex() : null;
+    }
+
     /**
      * Hashes the provided {@link BufferedSource} using SHA1 and returns a {@link ByteString}.
      *
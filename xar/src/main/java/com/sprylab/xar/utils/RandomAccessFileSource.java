@@ -4,21 +4,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
-import okio.Buffer;
-import okio.Source;
 import okio.Timeout;
 
 /**
  * Supplies a stream of bytes from an underlying {@link RandomAccessFile}.
+ * <p>
+ * Offsets and lengths are 64 bit values, so files larger than 2 GB are supported.
  */
-public class RandomAccessFileSource implements Source {
+public class RandomAccessFileSource extends RangeSource {
 
     private final RandomAccessFile randomAccessFile;
 
-    private final Timeout timeout;
-
-    private long remainingLength;
-
     /**
      * Creates a new {@link RandomAccessFileSource}, which reads the whole {@code file}.
      *
@@ -51,44 +47,14 @@ public class RandomAccessFileSource implements Source {
      * @throws IOException when an I/O error occurred while reading or opening the file
      */
     public RandomAccessFileSource(final File file, final long offset, final long length, final Timeout timeout) throws IOException {
+        super(length, timeout);
         this.randomAccessFile = new RandomAccessFile(file, "r");
         this.randomAccessFile.seek(offset);
-        this.remainingLength = length;
-        this.timeout = timeout;
-    }
-
-    @Override
-    public long read(final Buffer sink, final long byteCount) throws IOException {
-        if (byteCount < 0L) {
-            throw new IllegalArgumentException("byteCount < 0: " + byteCount);
-        }
-        if (byteCount == 0L) {
-            return 0L;
-        }
-        if (remainingLength == 0L) {
-            return -1L;
-        }
-
-        try {
-            timeout.throwIfReached();
-            // TODO obviously we currently only support files with size <= 2GB...
-            final int maxToCopy = (int) Math.min(byteCount, remainingLength);
-            final byte[] bytes = new byte[maxToCopy];
-            final int bytesRead = randomAccessFile.read(bytes, 0, maxToCopy);
-            if (bytesRead == -1) {
-                return -1;
-            }
-            sink.write(bytes);
-            remainingLength -= bytesRead;
-            return bytesRead;
-        } catch (final AssertionError e) {
-            throw e;
-        }
     }
 
     @Override
-    public Timeout timeout() {
-        return timeout;
+    protected int read(final byte[] data, final int offset, final int byteCount) throws IOException {
+        return randomAccessFile.read(data, offset, byteCount);
     }
 
     @Override
@@ -0,0 +1,73 @@
+package com.sprylab.xar.utils;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Base class for sources reading a limited range of a file directly into the tail segment of the sink, avoiding an intermediate copy.
+ */
+abstract class RangeSource implements Source {
+
+    private final Timeout timeout;
+
+    private final Buffer.UnsafeCursor cursor = new Buffer.UnsafeCursor();
+
+    private long remainingLength;
+
+    RangeSource(final long length, final Timeout timeout) {
+        this.remainingLength = length;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public long read(final Buffer sink, final long byteCount) throws IOException {
+        if (byteCount < 0L) {
+            throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+        }
+        if (byteCount == 0L) {
+            return 0L;
+        }
+        if (remainingLength == 0L) {
+            return -1L;
+        }
+
+        timeout.throwIfReached();
+
+        final long oldSize = sink.size();
+        int bytesRead = -1;
+        sink.readAndWriteUnsafe(cursor);
+        try {
+            final long available = cursor.expandBuffer(1);
+            final int maxToCopy = (int) Math.min(available, Math.min(byteCount, remainingLength));
+            bytesRead = read(cursor.data, cursor.start, maxToCopy);
+        } finally {
+            // drop the unused part of the segment, also if reading failed
+            cursor.resizeBuffer(oldSize + Math.max(bytesRead, 0));
+            cursor.close();
+        }
+        if (bytesRead == -1) {
+            return -1L;
+        }
+        remainingLength -= bytesRead;
+        return bytesRead;
+    }
+
+    /**
+     * Reads the next bytes of the range.
+     *
+     * @param data      the array to read into
+     * @param offset    the offset in {@code data} to start writing at
+     * @param byteCount the maximum number of bytes to read, which does not exceed the remaining length of the range
+     * @return the number of bytes read or {@code -1} if the end of the file has been reached
+     * @throws IOException when an I/O error occurred while reading
+     */
+    protected abstract int read(final byte[] data, final int offset, final int byteCount) throws IOException;
+
+    @Override
+    public Timeout timeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,135 @@
+package com.sprylab.xar.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import com.sprylab.xar.codec.GzipCodec;
+import com.sprylab.xar.codec.ZlibPool;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * A {@link CompressionPolicy} deciding by the content of each file whether compressing it pays off, regardless of its extension.
+ * <p>
+ * The first {@link #getSampleSize()} bytes of a file are sampled and compressed with {@link Deflater#BEST_SPEED}. The file is only
+ * compressed if this shrinks the sample to at most {@link #getMaxRatio()} of its size. Unlike statistics of the byte values, this also
+ * detects repetitive content with evenly distributed bytes, like tables, binary records or audio samples. As the sample may not be
+ * representative, the returned {@link Compression} still stores files whose compressed content turns out not to be smaller.
+ * <p>
+ * Files are sampled when they are added to {@link XarPacker}, which costs one small read per file.
+ */
+public class AdaptiveCompressionPolicy implements CompressionPolicy {
+
+    /**
+     * The default number of bytes sampled from the start of each file (64 KiB).
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * The default maximum ratio of the compressed to the uncompressed sample size for a file to be compressed.
+     */
+    public static final double DEFAULT_MAX_RATIO = 0.9;
+
+    /**
+     * The default minimum size of files to compress, as the overhead of compressing tiny files outweighs the savings.
+     */
+    public static final long DEFAULT_MIN_SIZE = 256L;
+
+    private final Compression compression;
+
+    private final int sampleSize;
+
+    private final double maxRatio;
+
+    private final long minSize;
+
+    /**
+     * Creates a policy compressing with gzip at {@link Deflater#BEST_COMPRESSION} and default thresholds.
+     */
+    public AdaptiveCompressionPolicy() {
+        this(new Compression(new GzipCodec(), true), DEFAULT_SAMPLE_SIZE, DEFAULT_MAX_RATIO, DEFAULT_MIN_SIZE);
+    }
+
+    /**
+     * @param compression the {@link Compression} to use for files which are worth compressing
+     * @param sampleSize  the number of bytes to sample from the start of each file
+     * @param maxRatio    the maximum ratio of the compressed to the uncompressed sample size for a file to be compressed
+     * @param minSize     the minimum size in bytes of files to compress
+     */
+    public AdaptiveCompressionPolicy(final Compression compression, final int sampleSize, final double maxRatio, final long minSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize < 1: " + sampleSize);
+        }
+        if (maxRatio <= 0.0 || maxRatio > 1.0) {
+            throw new IllegalArgumentException("maxRatio not in (0, 1]: " + maxRatio);
+        }
+        this.compression = compression.isStoreIfNotSmaller() ? compression : new Compression(compression.getCodec(), true);
+        this.sampleSize = sampleSize;
+        this.maxRatio = maxRatio;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public Compression getCompression(final File file) {
+        final long size = file.length();
+        if (size < minSize || size == 0L) {
+            return Compression.NONE;
+        }
+
+        final byte[] sample;
+        try (final BufferedSource source = Okio.buffer(Okio.source(file))) {
+            sample = source.readByteArray(Math.min(sampleSize, size));
+        } catch (final IOException e) {
+            // the error is reported when the file is read for writing, which then falls back to storing if necessary
+            return compression;
+        }
+
+        if (getCompressionRatio(sample) > maxRatio) {
+            return Compression.NONE;
+        }
+        return compression;
+    }
+
+    /**
+     * @param bytes the bytes to compress
+     * @return the size of {@code bytes} compressed with {@link Deflater#BEST_SPEED} divided by their uncompressed size
+     */
+    static double getCompressionRatio(final byte[] bytes) {
+        final Deflater deflater = ZlibPool.getDefault().acquireDeflater(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final byte[] buffer = new byte[8192];
+            long compressedSize = 0L;
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(buffer);
+            }
+            return (double) compressedSize / bytes.length;
+        } finally {
+            ZlibPool.getDefault().release(deflater);
+        }
+    }
+
+    /**
+     * @return the number of bytes sampled from the start of each file
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return the maximum ratio of the compressed to the uncompressed sample size for a file to be compressed
+     */
+    public double getMaxRatio() {
+        return maxRatio;
+    }
+
+    /**
+     * @return the minimum size in bytes of files to compress
+     */
+    public long getMinSize() {
+        return minSize;
+    }
+}
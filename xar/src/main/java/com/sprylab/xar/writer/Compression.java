@@ -0,0 +1,69 @@
+package com.sprylab.xar.writer;
+
+import com.sprylab.xar.codec.GzipCodec;
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.codec.XarCodecs;
+
+/**
+ * Describes how the content of an entry is compressed: the {@link XarCodec} to encode it with, which carries settings like the
+ * compression level, and whether to store it uncompressed if compressing does not make it smaller.
+ *
+ * @see CompressionPolicy
+ */
+public final class Compression {
+
+    /**
+     * Stores content uncompressed.
+     */
+    public static final Compression NONE = new Compression(XarCodecs.NONE, false);
+
+    /**
+     * Compresses content with {@link XarCodecs#GZIP}, i.e. the best compression level, even if that does not make it smaller.
+     */
+    public static final Compression GZIP = new Compression(XarCodecs.GZIP, false);
+
+    private final XarCodec codec;
+
+    private final boolean storeIfNotSmaller;
+
+    /**
+     * @param codec             the {@link XarCodec} to encode the content with
+     * @param storeIfNotSmaller {@code true} to store the content uncompressed if its encoded length is not less than its size
+     */
+    public Compression(final XarCodec codec, final boolean storeIfNotSmaller) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec == null");
+        }
+        this.codec = codec;
+        this.storeIfNotSmaller = storeIfNotSmaller;
+    }
+
+    /**
+     * @param level             the compression level, see {@link GzipCodec#GzipCodec(int, int)}
+     * @param strategy          the compression strategy, see {@link GzipCodec#GzipCodec(int, int)}
+     * @param storeIfNotSmaller {@code true} to store the content uncompressed if its compressed length is not less than its size
+     * @return a {@link Compression} using gzip with the given settings
+     */
+    public static Compression gzip(final int level, final int strategy, final boolean storeIfNotSmaller) {
+        return new Compression(new GzipCodec(level, strategy), storeIfNotSmaller);
+    }
+
+    /**
+     * @return the {@link XarCodec} to encode the content with
+     */
+    public XarCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return {@code true} if the content is stored uncompressed when its encoded length is not less than its size
+     */
+    public boolean isStoreIfNotSmaller() {
+        return storeIfNotSmaller;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compression{style=%s, storeIfNotSmaller=%s}", codec.getStyle(), storeIfNotSmaller);
+    }
+}
@@ -0,0 +1,20 @@
+package com.sprylab.xar.writer;
+
+import java.io.File;
+
+/**
+ * Selects the {@link Compression} of each file added by {@link XarPacker}, e.g. by its extension or size.
+ * <p>
+ * Implementations may be called concurrently and should not read the file unless necessary, as it may not be packed until much later.
+ *
+ * @see ExtensionCompressionPolicy
+ * @see XarPacker#setCompressionPolicy(CompressionPolicy)
+ */
+public interface CompressionPolicy {
+
+    /**
+     * @param file the file to be added
+     * @return the {@link Compression} to use for {@code file}, never {@code null}
+     */
+    Compression getCompression(File file);
+}
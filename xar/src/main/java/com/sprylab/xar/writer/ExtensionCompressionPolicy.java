@@ -0,0 +1,45 @@
+package com.sprylab.xar.writer;
+
+import java.io.File;
+import java.util.Set;
+
+import com.sprylab.xar.utils.StringUtils;
+
+/**
+ * A {@link CompressionPolicy} compressing files with one of the given extensions and a minimum size, and storing all other files.
+ */
+public class ExtensionCompressionPolicy implements CompressionPolicy {
+
+    private final Set<String> extensions;
+
+    private final Compression compression;
+
+    private final long minSize;
+
+    /**
+     * @param extensions  the extensions of files to compress, without the leading dot
+     * @param compression the {@link Compression} to use for these files
+     */
+    public ExtensionCompressionPolicy(final Set<String> extensions, final Compression compression) {
+        this(extensions, compression, 0L);
+    }
+
+    /**
+     * @param extensions  the extensions of files to compress, without the leading dot
+     * @param compression the {@link Compression} to use for these files
+     * @param minSize     the minimum size in bytes of files to compress, as compressing tiny files rarely pays off
+     */
+    public ExtensionCompressionPolicy(final Set<String> extensions, final Compression compression, final long minSize) {
+        this.extensions = extensions;
+        this.compression = compression;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public Compression getCompression(final File file) {
+        if (file.length() < minSize || !extensions.contains(StringUtils.substringAfterLast(file.getName(), "."))) {
+            return Compression.NONE;
+        }
+        return compression;
+    }
+}
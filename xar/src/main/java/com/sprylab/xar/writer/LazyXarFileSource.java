@@ -0,0 +1,125 @@
+package com.sprylab.xar.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.toc.model.Encoding;
+
+import okio.Source;
+
+/**
+ * A {@link XarEntrySource} for a file, which only records the file's path and metadata when created.
+ * <p>
+ * Reading, hashing and compressing the file is deferred until the length, a checksum or the content is requested for the first time,
+ * which {@link XarSink} does only while writing. The content is then handled as in
+ * {@link XarFileSource#XarFileSource(File, Compression, ChecksumAlgorithm, boolean) spool mode}, so it is never held in memory.
+ * <p>
+ * Getters which need the content throw an {@link UncheckedIOException} if reading the file fails.
+ */
+public class LazyXarFileSource implements XarEntrySource {
+
+    private final File file;
+
+    private final Compression compression;
+
+    private final ChecksumAlgorithm checksumStyle;
+
+    private XarFileSource delegate;
+
+    public LazyXarFileSource(final File file, final Encoding encoding, final ChecksumAlgorithm checksumStyle) {
+        this(file, new Compression(XarCodecs.forEncoding(encoding), false), checksumStyle);
+    }
+
+    public LazyXarFileSource(final File file, final Compression compression, final ChecksumAlgorithm checksumStyle) {
+        this.file = file;
+        this.compression = compression;
+        this.checksumStyle = checksumStyle;
+    }
+
+    /**
+     * Reads, hashes and compresses the file if this has not been done yet.
+     *
+     * @throws IOException when an I/O error occurred while reading the file or writing the temporary file
+     */
+    @Override
+    public synchronized void prepare() throws IOException {
+        if (delegate == null) {
+            delegate = new XarFileSource(file, compression, checksumStyle, true);
+        }
+    }
+
+    private synchronized XarFileSource getDelegate() {
+        try {
+            prepare();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @Override
+    public long getLength() {
+        return getDelegate().getLength();
+    }
+
+    @Override
+    public long getSize() {
+        return file.length();
+    }
+
+    @Override
+    public long getLastModified() {
+        return file.lastModified();
+    }
+
+    @Override
+    public String getExtractedChecksum() {
+        return getDelegate().getExtractedChecksum();
+    }
+
+    @Override
+    public String getArchivedChecksum() {
+        return getDelegate().getArchivedChecksum();
+    }
+
+    @Override
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumStyle;
+    }
+
+    @Override
+    public Encoding getEncoding() {
+        return getDelegate().getEncoding();
+    }
+
+    @Override
+    public String getEncodingStyle() {
+        return getDelegate().getEncodingStyle();
+    }
+
+    @Override
+    public synchronized Source getSource() throws IOException {
+        prepare();
+        return delegate.getSource();
+    }
+
+    /**
+     * Deletes the temporary file the content has been spooled to, if any. The file is read, hashed and compressed again when it is
+     * needed afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (delegate != null) {
+            delegate.close();
+            delegate = null;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.sprylab.xar.writer;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
 
 import okio.Source;
 
-public interface XarEntrySource {
+public interface XarEntrySource extends Closeable {
 
     String getName();
 
@@ -23,5 +27,40 @@ public interface XarEntrySource {
 
     Encoding getEncoding();
 
-    Source getSource();
+    /**
+     * @return the encoding style written to the table of contents, which has to be overridden for {@link Encoding#OTHER}
+     * @see com.sprylab.xar.codec.XarCodec#getStyle()
+     */
+    default String getEncodingStyle() {
+        return EncodingEnumTransform.toStyle(getEncoding());
+    }
+
+    /**
+     * Opens the (encoded) content of this source. {@link XarSink} calls this once per written archive and closes the returned source.
+     *
+     * @return the {@link Source} to read the content from
+     * @throws IOException when an I/O error occurred while opening the content
+     */
+    Source getSource() throws IOException;
+
+    /**
+     * Computes the length and checksums of this source ahead of writing, if they are computed lazily.
+     * <p>
+     * {@link XarSink} may call this concurrently for different sources, so it must not depend on other sources.
+     *
+     * @throws IOException when an I/O error occurred while preparing
+     */
+    default void prepare() throws IOException {
+        // nothing to prepare by default
+    }
+
+    /**
+     * Releases temporary resources held by this source, like files its content has been spooled to.
+     *
+     * @throws IOException when an I/O error occurred while releasing the resources
+     */
+    @Override
+    default void close() throws IOException {
+        // nothing to release by default
+    }
 }
@@ -2,18 +2,19 @@ package com.sprylab.xar.writer;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.util.zip.Deflater;
 
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.codec.XarCodecs;
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
 import com.sprylab.xar.utils.HashUtils;
 
 import okio.Buffer;
 import okio.BufferedSink;
-import okio.BufferedSource;
-import okio.DeflaterSink;
+import okio.HashingSink;
 import okio.Okio;
+import okio.Sink;
 import okio.Source;
 
 public class XarFileSource implements XarEntrySource {
@@ -22,7 +23,17 @@ public class XarFileSource implements XarEntrySource {
 
     private File file;
 
-    private Encoding encoding;
+    private boolean spoolToDisk;
+
+    private File spoolFile;
+
+    private boolean closed;
+
+    private long length;
+
+    private XarCodec codec;
+
+    private boolean storeIfNotSmaller;
 
     private ChecksumAlgorithm checksumStyle = ChecksumAlgorithm.NONE;
 
@@ -39,32 +50,111 @@ public class XarFileSource implements XarEntrySource {
     }
 
     public XarFileSource(final File file, final Encoding encoding, final ChecksumAlgorithm checksumStyle) throws IOException {
+        this(file, new Compression(XarCodecs.forEncoding(encoding), false), checksumStyle, false);
+    }
+
+    /**
+     * Creates a new entry source for {@code file}, which is compressed as described by {@code compression}.
+     * <p>
+     * If {@code spoolToDisk} is {@code false}, the (possibly compressed) content is kept in memory until it is written.
+     * Otherwise, uncompressed content is read again from {@code file} when written and compressed content is spooled to a temporary file,
+     * so heap usage does not depend on the size of {@code file}. In this case, {@code file} must not be modified before it is written, and
+     * the temporary file is deleted by {@link #close()}, e.g. when the {@link XarSink} it has been added to is closed.
+     *
+     * @param file          the file to add
+     * @param compression   the {@link Compression} to use
+     * @param checksumStyle the {@link ChecksumAlgorithm} to use
+     * @param spoolToDisk   {@code true} to avoid keeping the content in memory
+     * @throws IOException when an I/O error occurred while reading {@code file} or writing the temporary file
+     */
+    public XarFileSource(final File file, final Compression compression, final ChecksumAlgorithm checksumStyle, final boolean spoolToDisk)
+        throws IOException {
         this.file = file;
-        this.encoding = encoding;
+        this.codec = compression.getCodec();
+        this.storeIfNotSmaller = compression.isStoreIfNotSmaller();
         this.checksumStyle = checksumStyle;
-        try (final BufferedSource fileSource = Okio.buffer(Okio.source(file))) {
-            fileSource.require(file.length());
-            this.extractedChecksum = HashUtils.hashHex(fileSource, checksumStyle);
-            switch (encoding) {
-                case NONE:
-                    this.buffer.writeAll(fileSource);
-                    this.archivedChecksum = extractedChecksum;
-                    break;
-                case GZIP:
-                    try (final BufferedSink output = Okio.buffer(new DeflaterSink(this.buffer, new Deflater(Deflater.BEST_COMPRESSION)))) {
-                        output.writeAll(fileSource);
-                    }
-                    this.archivedChecksum = HashUtils.hashHex(this.buffer, checksumStyle);
-                    break;
-                case BZIP2:
-                    throw new UnsupportedEncodingException("Encoding not supported: " + encoding.name());
+        this.spoolToDisk = spoolToDisk;
+        if (spoolToDisk) {
+            spool();
+        } else {
+            read();
+        }
+    }
+
+    private void read() throws IOException {
+        // both checksums are computed while the content is copied, so the file is only read once
+        copy(buffer);
+        if (codec != XarCodecs.NONE && storeIfNotSmaller && buffer.size() >= file.length()) {
+            this.codec = XarCodecs.NONE;
+            this.buffer.clear();
+            try (final Source fileSource = Okio.source(file)) {
+                this.buffer.writeAll(fileSource);
+            }
+            this.archivedChecksum = extractedChecksum;
+        }
+        this.length = buffer.size();
+    }
+
+    /**
+     * Encodes the content of the file to {@code contentSink}, computing the extracted and archived checksums along the way.
+     */
+    private void copy(final Sink contentSink) throws IOException {
+        final HashingSink archivedHashingSink = HashUtils.hashingSink(contentSink, checksumStyle);
+        Sink sink = archivedHashingSink != null ? archivedHashingSink : contentSink;
+        HashingSink extractedHashingSink = archivedHashingSink;
+        if (codec != XarCodecs.NONE) {
+            sink = codec.encode(sink);
+            extractedHashingSink = HashUtils.hashingSink(sink, checksumStyle);
+            if (extractedHashingSink != null) {
+                sink = extractedHashingSink;
+            }
+        }
+        try (final Source fileSource = Okio.source(file);
+             final BufferedSink output = Okio.buffer(sink)) {
+            output.writeAll(fileSource);
+        }
+        this.extractedChecksum = HashUtils.hashHex(extractedHashingSink);
+        this.archivedChecksum = HashUtils.hashHex(archivedHashingSink);
+    }
+
+    private void spool() throws IOException {
+        if (codec == XarCodecs.NONE && checksumStyle == ChecksumAlgorithm.NONE) {
+            // nothing to compute, the content is read from the original file when written
+            this.length = file.length();
+            return;
+        }
+
+        final Sink contentSink;
+        if (codec != XarCodecs.NONE) {
+            this.spoolFile = File.createTempFile("xar", ".spool");
+            contentSink = Okio.sink(spoolFile);
+        } else {
+            // uncompressed content is read again from the original file when written
+            contentSink = Okio.blackhole();
+        }
+
+        try {
+            copy(contentSink);
+            this.length = spoolFile != null ? spoolFile.length() : file.length();
+            if (spoolFile != null && storeIfNotSmaller && length >= file.length()) {
+                // uncompressed content is read again from the original file when written
+                spoolFile.delete();
+                this.spoolFile = null;
+                this.codec = XarCodecs.NONE;
+                this.archivedChecksum = extractedChecksum;
+                this.length = file.length();
+            }
+        } catch (final IOException | RuntimeException e) {
+            if (spoolFile != null) {
+                spoolFile.delete();
             }
+            throw e;
         }
     }
 
     @Override
     public long getLength() {
-        return buffer.size();
+        return length;
     }
 
     @Override
@@ -74,12 +164,38 @@ public class XarFileSource implements XarEntrySource {
 
     @Override
     public Encoding getEncoding() {
-        return encoding;
+        return EncodingEnumTransform.fromStyle(codec.getStyle());
     }
 
     @Override
-    public Source getSource() {
-        return buffer;
+    public String getEncodingStyle() {
+        return codec.getStyle();
+    }
+
+    @Override
+    public Source getSource() throws IOException {
+        if (!spoolToDisk) {
+            // a copy shares the segments of the buffer, so the content can be written more than once
+            return buffer.clone();
+        }
+        if (spoolFile == null) {
+            return Okio.source(file);
+        }
+        if (closed) {
+            throw new IllegalStateException("The spooled content of '" + getName() + "' has already been deleted.");
+        }
+        return Okio.source(spoolFile);
+    }
+
+    /**
+     * Deletes the temporary file the content has been spooled to, if any. The content cannot be written afterwards then.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (spoolFile != null) {
+            spoolFile.delete();
+        }
     }
 
     @Override
@@ -4,9 +4,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import com.sprylab.xar.toc.model.Encoding;
-import com.sprylab.xar.utils.StringUtils;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 
 /**
  * A facade for easily creating xar archives.
@@ -29,12 +30,29 @@ public class XarPacker {
 
     private final XarSink sink;
 
+    private final boolean spoolToDisk;
+
+    private CompressionPolicy compressionPolicy = new ExtensionCompressionPolicy(DEFAULT_PACK_EXTENSIONS, Compression.GZIP);
+
     /**
      * Creates a new {@link XarPacker}, which will write to {@code archiveFile}.
      *
      * @param archiveFile the file to write the archive to - will be deleted if exists
      */
     public XarPacker(final File archiveFile) {
+        this(archiveFile, false);
+    }
+
+    /**
+     * Creates a new {@link XarPacker}, which will write to {@code archiveFile}.
+     *
+     * @param archiveFile the file to write the archive to - will be deleted if exists
+     * @param spoolToDisk {@code true} to only record the files when they are added and to read, hash and compress them while
+     *                    {@link #write()} is called, spooling compressed content to temporary files instead of keeping it in memory
+     *                    (see {@link LazyXarFileSource})
+     */
+    public XarPacker(final File archiveFile, final boolean spoolToDisk) {
+        this.spoolToDisk = spoolToDisk;
         destFile = archiveFile;
         if (destFile.exists()) {
             destFile.delete();
@@ -42,13 +60,41 @@ public class XarPacker {
         sink = new XarSink();
     }
 
+    /**
+     * @return the {@link CompressionPolicy} used for directories added without a set of extensions to compress
+     */
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Sets the {@link CompressionPolicy} used for directories added without a set of extensions to compress.
+     * Defaults to compressing files with a default list of text extensions using {@link Compression#GZIP}. Use an
+     * {@link AdaptiveCompressionPolicy} to decide by the content of each file instead.
+     *
+     * @param compressionPolicy the {@link CompressionPolicy} to use
+     */
+    public void setCompressionPolicy(final CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Sets the compression level of the table of contents.
+     *
+     * @param tocCompressionLevel the compression level
+     * @see XarSink#setTocCompressionLevel(int)
+     */
+    public void setTocCompressionLevel(final int tocCompressionLevel) {
+        sink.setTocCompressionLevel(tocCompressionLevel);
+    }
+
     /**
      * Adds a folder or it's content to the archive.
      *
      * @param folder           the folder to add
      * @param asSubFolder      {@code true}, if the folder itself should be added to the archive, {@code false} if only it's content
-     * @param packedExtensions a set with all extensions, which should be compressed - if {@code null}, a default list of extensions
-     *                         to be compressed will be used
+     * @param packedExtensions a set with all extensions, which should be compressed - if {@code null}, the
+     *                         {@link #setCompressionPolicy(CompressionPolicy) compression policy} will be used
      * @throws Exception if an error occurred
      */
     public void addDirectory(final File folder, final boolean asSubFolder, final Set<String> packedExtensions) throws Exception {
@@ -57,7 +103,7 @@ public class XarPacker {
             root = new XarSimpleDirectory(folder.getName());
             sink.addDirectory(root, null);
         }
-        addDirectoryContent(folder, root, packedExtensions == null ? DEFAULT_PACK_EXTENSIONS : null);
+        addDirectoryContent(folder, root, packedExtensions);
     }
 
     /**
@@ -65,19 +111,28 @@ public class XarPacker {
      *
      * @param folder           the folder to from which to add the content
      * @param parent           the parent folder in the xar archive
-     * @param packedExtensions a set with all extensions, which should be compressed - if {@code null}, a default list of extensions
-     *                         to be compressed will be used
+     * @param packedExtensions a set with all extensions, which should be compressed - if {@code null}, the
+     *                         {@link #setCompressionPolicy(CompressionPolicy) compression policy} will be used
      * @throws Exception if an error occurred
      */
     public void addDirectoryContent(final File folder, final XarDirectory parent, final Set<String> packedExtensions) throws Exception {
+        addDirectoryContent(folder, parent, packedExtensions == null
+            ? compressionPolicy
+            : new ExtensionCompressionPolicy(packedExtensions, Compression.GZIP));
+    }
+
+    private void addDirectoryContent(final File folder, final XarDirectory parent, final CompressionPolicy compressionPolicy)
+        throws Exception {
         for (final File file : folder.listFiles()) {
             if (file.isDirectory()) {
                 final XarDirectory dir = new XarSimpleDirectory(file.getName());
                 sink.addDirectory(dir, parent);
-                addDirectoryContent(file, dir, packedExtensions);
+                addDirectoryContent(file, dir, compressionPolicy);
             } else {
-                final boolean compress = packedExtensions.contains(StringUtils.substringAfterLast(file.getName(), "."));
-                final XarEntrySource source = new XarFileSource(file, compress ? Encoding.GZIP : Encoding.NONE);
+                final Compression compression = compressionPolicy.getCompression(file);
+                final XarEntrySource source = spoolToDisk
+                    ? new LazyXarFileSource(file, compression, ChecksumAlgorithm.NONE)
+                    : new XarFileSource(file, compression, ChecksumAlgorithm.NONE, false);
                 sink.addSource(source, parent);
             }
         }
@@ -91,6 +146,46 @@ public class XarPacker {
     public void write() throws Exception {
         try (final FileOutputStream fos = new FileOutputStream(destFile)) {
             sink.write(fos);
+        } finally {
+            // delete the spooled content, it is created again if the archive is written once more
+            sink.close();
+        }
+    }
+
+    /**
+     * Creates the archive file and writes every entry to it, compressing and hashing up to {@code parallelism} files concurrently.
+     * <p>
+     * This only speeds up packing if this packer was created with {@code spoolToDisk} set to {@code true}, as files are read when they are
+     * added otherwise. The written archive is byte-identical to the one written by {@link #write()}.
+     *
+     * @param parallelism the number of files to compress and hash concurrently
+     * @throws Exception if an error occurred
+     * @see XarSink#write(java.io.OutputStream, ExecutorService)
+     */
+    public void write(final int parallelism) throws Exception {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            write(executorService);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the archive file and writes every entry to it, compressing and hashing files concurrently on {@code executorService}.
+     *
+     * @param executorService the {@link ExecutorService} to compress and hash files on - will not be shut down
+     * @throws Exception if an error occurred
+     * @see #write(int)
+     */
+    public void write(final ExecutorService executorService) throws Exception {
+        try (final FileOutputStream fos = new FileOutputStream(destFile)) {
+            sink.write(fos, executorService);
+        } finally {
+            sink.close();
         }
     }
 
@@ -1,14 +1,22 @@
 package com.sprylab.xar.writer;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 
 import com.sprylab.xar.XarHeader;
+import com.sprylab.xar.codec.ZlibPool;
+import com.sprylab.xar.metrics.XarMetrics;
 import com.sprylab.xar.toc.TocFactory;
 import com.sprylab.xar.toc.model.Checksum;
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
@@ -20,17 +28,19 @@ import com.sprylab.xar.toc.model.Type;
 import com.sprylab.xar.utils.HashUtils;
 
 import okio.Buffer;
-import okio.BufferedSource;
+import okio.BufferedSink;
 import okio.ByteString;
-import okio.DeflaterSink;
 import okio.Okio;
 import okio.Sink;
+import okio.Source;
 
-public class XarSink {
-
-    private static final long CHECKSUM_LENGTH_MD5 = 16L;
-
-    private static final long CHECKSUM_LENGTH_SHA1 = 20L;
+/**
+ * Writes a xar archive from {@link XarEntrySource}s.
+ * <p>
+ * The archive may be written more than once until the sink is closed. Closing the sink closes all entry sources, which deletes the temporary files spooled
+ * sources have created, so a sink should be closed once the archive has been written, whether that succeeded or not.
+ */
+public class XarSink implements Closeable {
 
     private final ChecksumAlgorithm checksumAlgorithm;
 
@@ -40,31 +50,25 @@ public class XarSink {
 
     private final List<XarEntrySource> sources = new ArrayList<>();
 
+    private final List<Data> sourceData = new ArrayList<>();
+
     private final Map<XarDirectory, File> dirMap = new HashMap<>();
 
-    private long currentOffset;
+    private final long checksumLength;
 
     private int id;
 
+    private int tocCompressionLevel = Deflater.BEST_COMPRESSION;
+
+    private XarMetrics metrics = XarMetrics.NONE;
+
     public XarSink() {
         this(ChecksumAlgorithm.SHA1);
     }
 
     public XarSink(final ChecksumAlgorithm checksumAlgorithm) {
         this.checksumAlgorithm = checksumAlgorithm;
-        final long checksumLength;
-        switch (checksumAlgorithm) {
-            default:
-            case NONE:
-                checksumLength = 0L;
-                break;
-            case SHA1:
-                checksumLength = CHECKSUM_LENGTH_SHA1;
-                break;
-            case MD5:
-                checksumLength = CHECKSUM_LENGTH_MD5;
-                break;
-        }
+        checksumLength = checksumAlgorithm.getDigestLength();
         toc.setCreationTime(new Date());
         toc.setFiles(files);
         final Checksum checksum = new Checksum();
@@ -72,13 +76,58 @@ public class XarSink {
         checksum.setStyle(checksumAlgorithm);
         checksum.setSize(checksumLength);
         checksum.setOffset(0L);
-        this.currentOffset = checksumLength;
+    }
+
+    /**
+     * @return the compression level of the table of contents
+     */
+    public int getTocCompressionLevel() {
+        return tocCompressionLevel;
+    }
+
+    /**
+     * Sets the compression level of the table of contents, which is always compressed with zlib as required by the xar format.
+     * Defaults to {@link Deflater#BEST_COMPRESSION}.
+     *
+     * @param tocCompressionLevel the compression level from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION} or
+     *                            {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setTocCompressionLevel(final int tocCompressionLevel) {
+        if (tocCompressionLevel < Deflater.DEFAULT_COMPRESSION || tocCompressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + tocCompressionLevel);
+        }
+        this.tocCompressionLevel = tocCompressionLevel;
+    }
+
+    /**
+     * @return the {@link XarMetrics} reported to, {@link XarMetrics#NONE} if metrics are disabled
+     */
+    public XarMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link XarMetrics} to report the written entries and bytes and the time spent writing them to.
+     *
+     * @param metrics the {@link XarMetrics} to use or {@code null} to disable metrics
+     */
+    public void setMetrics(final XarMetrics metrics) {
+        this.metrics = metrics == null ? XarMetrics.NONE : metrics;
     }
 
     public void addSource(final XarEntrySource source) {
         addSource(source, null);
     }
 
+    /**
+     * Adds {@code source} to the archive.
+     * <p>
+     * The length, offset, encoding and checksums of the entry are only queried from {@code source} when the archive is written,
+     * so lazy sources like {@link LazyXarFileSource} are not read before {@link #write(OutputStream)} is called.
+     *
+     * @param source the {@link XarEntrySource} to add
+     * @param parent the parent directory or {@code null} to add the entry to the root
+     */
     public void addSource(final XarEntrySource source, final XarDirectory parent) {
         sources.add(source);
         final File file = new File();
@@ -89,27 +138,8 @@ public class XarSink {
         file.setMtime(lastModifiedDate);
         file.setCtime(lastModifiedDate);
         final Data data = new Data();
-        data.setOffset(currentOffset);
-        data.setLength(source.getLength());
-        data.setSize(source.getSize());
-        currentOffset += source.getLength();
-
-        final ChecksumAlgorithm checksumStyle = source.getChecksumAlgorithm();
-        if (checksumStyle != null && checksumStyle != ChecksumAlgorithm.NONE) {
-            final SimpleChecksum extractedChecksum = new SimpleChecksum();
-            extractedChecksum.setStyle(checksumStyle);
-            extractedChecksum.setValue(source.getExtractedChecksum() == null ? "0" : source.getExtractedChecksum());
-            data.setExtractedChecksum(extractedChecksum);
-            data.setUnarchivedChecksum(extractedChecksum);
-
-            final SimpleChecksum archivedChecksum = new SimpleChecksum();
-            archivedChecksum.setStyle(checksumStyle);
-            archivedChecksum.setValue(source.getArchivedChecksum() == null ? "0" : source.getArchivedChecksum());
-            data.setArchivedChecksum(archivedChecksum);
-        }
-
-        data.setEncoding(source.getEncoding());
         file.setData(data);
+        sourceData.add(data);
         addFile(file, parent);
     }
 
@@ -122,6 +152,56 @@ public class XarSink {
         dirMap.put(dir, file);
     }
 
+    private void prepareSources(final ExecutorService executorService) throws Exception {
+        final List<Future<?>> futures = new ArrayList<>(sources.size());
+        for (final XarEntrySource source : sources) {
+            futures.add(executorService.submit(() -> {
+                source.prepare();
+                return null;
+            }));
+        }
+        try {
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void updateSourceData() {
+        long currentOffset = checksumLength;
+        for (int i = 0, sourcesSize = sources.size(); i < sourcesSize; i++) {
+            final XarEntrySource source = sources.get(i);
+            final Data data = sourceData.get(i);
+            data.setOffset(currentOffset);
+            // the encoding may depend on the content, e.g. if it is stored uncompressed because compressing did not make it smaller
+            data.setEncodingStyle(source.getEncodingStyle());
+            data.setLength(source.getLength());
+            data.setSize(source.getSize());
+            currentOffset += source.getLength();
+
+            final ChecksumAlgorithm checksumStyle = source.getChecksumAlgorithm();
+            if (checksumStyle != null && checksumStyle != ChecksumAlgorithm.NONE) {
+                final SimpleChecksum extractedChecksum = new SimpleChecksum();
+                extractedChecksum.setStyle(checksumStyle);
+                extractedChecksum.setValue(source.getExtractedChecksum() == null ? "0" : source.getExtractedChecksum());
+                data.setExtractedChecksum(extractedChecksum);
+                data.setUnarchivedChecksum(extractedChecksum);
+
+                final SimpleChecksum archivedChecksum = new SimpleChecksum();
+                archivedChecksum.setStyle(checksumStyle);
+                archivedChecksum.setValue(source.getArchivedChecksum() == null ? "0" : source.getArchivedChecksum());
+                data.setArchivedChecksum(archivedChecksum);
+            }
+        }
+    }
+
     private void addFile(final File file, final XarDirectory parent) {
         if (parent == null) {
             files.add(file);
@@ -139,8 +219,39 @@ public class XarSink {
         }
     }
 
+    /**
+     * Writes the archive to {@code output} and closes it afterwards, preparing all entry sources concurrently beforehand.
+     * <p>
+     * Reading, compressing and hashing of lazy sources like {@link LazyXarFileSource} is done on {@code executorService}.
+     * Offsets are still assigned and entries are still written in the order they were added,
+     * so the archive is byte-identical to one written by {@link #write(OutputStream)}.
+     * The {@code executorService} is not shut down by this method.
+     *
+     * @param output          the {@link OutputStream} to write to
+     * @param executorService the {@link ExecutorService} to prepare the sources on
+     * @throws Exception if an error occurred
+     */
+    public void write(final OutputStream output, final ExecutorService executorService) throws Exception {
+        prepareSources(executorService);
+        write(output);
+    }
+
+    /**
+     * Writes the archive to {@code output} and closes it afterwards.
+     * <p>
+     * Only the table of contents is held in memory; the content of every entry source is streamed directly to {@code output}.
+     *
+     * @param output the {@link OutputStream} to write to
+     * @throws Exception if an error occurred
+     */
     public void write(final OutputStream output) throws Exception {
-        final Buffer buffer = new Buffer();
+        final XarMetrics metrics = this.metrics;
+        final long start = metrics == XarMetrics.NONE ? 0L : System.nanoTime();
+        try {
+            updateSourceData();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
 
         final long tocBufferSize;
         final Buffer tocCompressedBuffer;
@@ -150,7 +261,7 @@ public class XarSink {
 
             tocCompressedBuffer = new Buffer();
 
-            try (final Sink deflaterSink = new DeflaterSink(tocCompressedBuffer, new Deflater(Deflater.BEST_COMPRESSION))) {
+            try (final Sink deflaterSink = ZlibPool.getDefault().deflate(tocCompressedBuffer, tocCompressionLevel, Deflater.DEFAULT_STRATEGY)) {
                 deflaterSink.write(tocBuffer, tocBuffer.size());
             }
         }
@@ -159,23 +270,64 @@ public class XarSink {
 
         final ByteString tocCompressedBufferHash = HashUtils.hash(tocCompressedBuffer, checksumAlgorithm);
 
-        buffer.write(XarHeader.createHeader(tocCompressedBufferSize, tocBufferSize, checksumAlgorithm));
+        final byte[] header = XarHeader.createHeader(tocCompressedBufferSize, tocBufferSize, checksumAlgorithm);
+        try (final BufferedSink sink = Okio.buffer(Okio.sink(output))) {
+            sink.write(header);
 
-        buffer.writeAll(tocCompressedBuffer);
+            sink.writeAll(tocCompressedBuffer);
 
-        if (tocCompressedBufferHash != null) {
-            buffer.write(tocCompressedBufferHash);
-        }
+            if (tocCompressedBufferHash != null) {
+                sink.write(tocCompressedBufferHash);
+            }
+
+            if (metrics != XarMetrics.NONE) {
+                metrics.increment(XarMetrics.Counter.BYTES_WRITTEN,
+                    header.length + tocCompressedBufferSize + (tocCompressedBufferHash == null ? 0L : tocCompressedBufferHash.size()));
+            }
 
-        for (final XarEntrySource xs : sources) {
-            try (final BufferedSource source = Okio.buffer(xs.getSource())) {
-                buffer.writeAll(source);
+            for (final XarEntrySource xs : sources) {
+                final long entryStart = metrics == XarMetrics.NONE ? 0L : System.nanoTime();
+                try (final Source source = xs.getSource()) {
+                    final long bytesWritten = sink.writeAll(source);
+                    if (bytesWritten != xs.getLength()) {
+                        throw new IOException(String.format("Length of entry '%s' changed: expected %d bytes, but got %d bytes.",
+                            xs.getName(), xs.getLength(), bytesWritten));
+                    }
+                    if (metrics != XarMetrics.NONE) {
+                        metrics.increment(XarMetrics.Counter.ENTRIES_WRITTEN, 1L);
+                        metrics.increment(XarMetrics.Counter.BYTES_WRITTEN, bytesWritten);
+                        metrics.record(XarMetrics.Timer.ENTRY_WRITE, xs.getName(), System.nanoTime() - entryStart);
+                    }
+                }
             }
         }
 
-        try (final Sink sink = Okio.sink(output)) {
-            buffer.readAll(sink);
+        if (metrics != XarMetrics.NONE) {
+            metrics.record(XarMetrics.Timer.ARCHIVE_WRITE, null, System.nanoTime() - start);
         }
     }
 
+    /**
+     * Closes all entry sources, deleting their temporary files.
+     *
+     * @throws IOException when an I/O error occurred while closing a source
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (final XarEntrySource source : sources) {
+            try {
+                source.close();
+            } catch (final IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
 }
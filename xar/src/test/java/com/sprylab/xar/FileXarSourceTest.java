@@ -1,28 +1,57 @@
 package com.sprylab.xar;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.joou.UInteger;
 import org.joou.ULong;
 import org.joou.UShort;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sprylab.xar.codec.InflateIndex;
+import com.sprylab.xar.metrics.InMemoryXarMetrics;
+import com.sprylab.xar.metrics.XarMetrics;
+import com.sprylab.xar.toc.model.ChecksumAlgorithm;
+import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.writer.Compression;
+import com.sprylab.xar.writer.XarFileSource;
+import com.sprylab.xar.writer.XarPacker;
+import com.sprylab.xar.writer.XarSink;
+
+import okio.BufferedSource;
+
 public class FileXarSourceTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileXarSourceTest.class);
@@ -41,6 +70,10 @@ public class FileXarSourceTest {
 
     private XarSource gzipXarSource;
 
+    private FileXarSource sharedChannelNoneXarSource;
+
+    private FileXarSource sharedChannelGzipXarSource;
+
     @Before
     public void setUp() throws Exception {
         noneTestFile = TestUtil.getClasspathResourceAsFile(TEST_XAR_NONE_FILE_NAME);
@@ -48,6 +81,15 @@ public class FileXarSourceTest {
 
         gzipTestFile = TestUtil.getClasspathResourceAsFile(TEST_XAR_GZIP_FILE_NAME);
         gzipXarSource = new FileXarSource(gzipTestFile);
+
+        sharedChannelNoneXarSource = new FileXarSource(noneTestFile, true);
+        sharedChannelGzipXarSource = new FileXarSource(gzipTestFile, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sharedChannelNoneXarSource.close();
+        sharedChannelGzipXarSource.close();
     }
 
     @Test
@@ -154,6 +196,149 @@ public class FileXarSourceTest {
         }
     }
 
+    @Test
+    public void testListChildren() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final XarToc toc = xarSource.getToc();
+            assertEquals(Arrays.asList("dir", "file.txt"), sortedNames(toc.listChildren(null)));
+            assertEquals(Arrays.asList("dir/subdir1/subsubdir_1", "dir/subdir1/subsubdir_2", "dir/subdir1/subsubdir_3"),
+                sortedNames(toc.listChildren("dir/subdir1")));
+            assertTrue(toc.listChildren("file.txt").isEmpty());
+            assertTrue(toc.listChildren("does-not-exist").isEmpty());
+        }
+    }
+
+    @Test
+    public void testWalk() throws Exception {
+        for (final XarSource xarSource : getXarFiles()) {
+            final XarToc toc = xarSource.getToc();
+            assertEquals(9, toc.walk("").size());
+            assertEquals(Collections.singletonList("dir/subdir1/subsubdir_1/subsubdir_file_1.txt"),
+                sortedNames(toc.walk("dir/subdir1/subsubdir_1")));
+            assertEquals(7, toc.walk("dir").size());
+            assertEquals(6, toc.walk("dir/subdir1").size());
+            assertTrue(toc.walk("di").isEmpty());
+        }
+    }
+
+    private static List<String> sortedNames(final List<XarEntry> entries) {
+        final List<String> names = new ArrayList<>();
+        for (final XarEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void testStreamingTocParser() throws Exception {
+        for (final File testFile : Arrays.asList(noneTestFile, gzipTestFile)) {
+            final XarSource expectedXarSource = new FileXarSource(testFile);
+            final XarSource streamingXarSource = new FileXarSource(testFile);
+            streamingXarSource.setUseStreamingTocParser(true);
+
+            assertNull(streamingXarSource.getToc().getModel());
+            assertSameEntries(expectedXarSource, streamingXarSource);
+        }
+    }
+
+    @Test
+    public void testTocCache() throws Exception {
+        final File cacheDirectory = TestUtil.getTempDirectory();
+        try {
+            final XarTocCache tocCache = new XarTocCache(cacheDirectory);
+            for (final File testFile : Arrays.asList(noneTestFile, gzipTestFile)) {
+                final XarSource expectedXarSource = new FileXarSource(testFile);
+
+                final CountingFileXarSource firstXarSource = new CountingFileXarSource(testFile);
+                firstXarSource.setTocCache(tocCache);
+                assertSameEntries(expectedXarSource, firstXarSource);
+                assertEquals(1, firstXarSource.tocSourceCount.get());
+
+                final CountingFileXarSource cachedXarSource = new CountingFileXarSource(testFile);
+                cachedXarSource.setTocCache(tocCache);
+                assertSameEntries(expectedXarSource, cachedXarSource);
+                assertNull(cachedXarSource.getToc().getModel());
+                assertEquals(0, cachedXarSource.tocSourceCount.get());
+            }
+            assertEquals(2, cacheDirectory.listFiles().length);
+
+            // corrupt cache files are ignored and replaced
+            for (final File cacheFile : cacheDirectory.listFiles()) {
+                FileUtils.writeStringToFile(cacheFile, "corrupt", StandardCharsets.UTF_8);
+            }
+            final CountingFileXarSource xarSource = new CountingFileXarSource(noneTestFile);
+            xarSource.setTocCache(tocCache);
+            assertSameEntries(noneXarSource, xarSource);
+            assertEquals(1, xarSource.tocSourceCount.get());
+        } finally {
+            FileUtils.deleteQuietly(cacheDirectory);
+        }
+    }
+
+    @Test
+    public void testConcurrentTocInitialization() throws Exception {
+        final CountingFileXarSource xarSource = new CountingFileXarSource(gzipTestFile);
+        final int threadCount = 8;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final List<Future<XarToc>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executorService.submit(() -> {
+                    startLatch.await();
+                    return xarSource.getToc();
+                }));
+            }
+            startLatch.countDown();
+
+            final XarToc toc = futures.get(0).get();
+            for (final Future<XarToc> future : futures) {
+                assertSame(toc, future.get());
+            }
+            assertEquals(1, xarSource.tocSourceCount.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static void assertSameEntries(final XarSource expectedXarSource, final XarSource actualXarSource) throws IOException {
+        assertEquals(expectedXarSource.getEntries().size(), actualXarSource.getEntries().size());
+        for (final XarEntry expected : expectedXarSource.getEntries()) {
+            final XarEntry actual = actualXarSource.getEntry(expected.getName());
+            assertNotNull(actual);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.isDirectory(), actual.isDirectory());
+            assertEquals(expected.getMode(), actual.getMode());
+            assertEquals(expected.getUser(), actual.getUser());
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getEncoding(), actual.getEncoding());
+            assertEquals(expected.getChecksumAlgorithm(), actual.getChecksumAlgorithm());
+            assertEquals(expected.getChecksum(), actual.getChecksum());
+            assertEquals(expected.getChildren() == null ? 0 : expected.getChildren().size(),
+                actual.getChildren() == null ? 0 : actual.getChildren().size());
+            if (!expected.isDirectory()) {
+                assertArrayEquals(expected.getBytes(), actual.getBytes());
+            }
+        }
+    }
+
+    private static class CountingFileXarSource extends FileXarSource {
+
+        private final AtomicInteger tocSourceCount = new AtomicInteger();
+
+        CountingFileXarSource(final File file) {
+            super(file);
+        }
+
+        @Override
+        public BufferedSource getToCSource() throws IOException {
+            tocSourceCount.incrementAndGet();
+            return super.getToCSource();
+        }
+    }
+
     @Test
     public void testGetEntry() throws Exception {
         for (final XarSource xarSource : getXarFiles()) {
@@ -197,16 +382,34 @@ public class FileXarSourceTest {
         }
     }
 
+    @Test
+    public void testExtractAllFilesParallel() throws Exception {
+        for (final XarSource xarFile : getXarFiles()) {
+            checkExtractAllFiles(xarFile, false, 4);
+            checkExtractAllFiles(xarFile, true, 4);
+        }
+    }
+
     private void checkExtractAllFiles(final XarSource xarSource, final boolean check)
+        throws IOException, URISyntaxException {
+        checkExtractAllFiles(xarSource, check, 0);
+    }
+
+    private void checkExtractAllFiles(final XarSource xarSource, final boolean check, final int parallelism)
         throws IOException, URISyntaxException {
         final File tempDir = TestUtil.getTempDirectory();
-        xarSource.extractAll(tempDir, check, entry -> {
+        final XarSource.OnEntryExtractedListener listener = entry -> {
             try {
                 assertTrue(xarSource.hasEntry(entry.getName()));
             } catch (final XarException e) {
                 e.printStackTrace();
             }
-        });
+        };
+        if (parallelism > 0) {
+            xarSource.extractAll(tempDir, check, listener, parallelism);
+        } else {
+            xarSource.extractAll(tempDir, check, listener);
+        }
 
         // compare extracted files with reference files
         final File unpackedReferenceDirectory = TestUtil.getClasspathResourceAsFile(UNPACKED_REFERENCE_FILES_DIR_NAME);
@@ -258,7 +461,185 @@ public class FileXarSourceTest {
         FileUtils.deleteDirectory(tempDir);
     }
 
+    @Test
+    public void testExtractVerifiesChecksumsWhileExtracting() throws Exception {
+        final File tempDir = TestUtil.getTempDirectory();
+        try {
+            final XarEntry gzipEntry = new FileXarSource(gzipTestFile).getEntry("file.txt");
+            assertNotNull(gzipEntry.getArchivedChecksum());
+            gzipEntry.extract(tempDir, true);
+
+            // a wrong archived checksum is detected although the extracted data is correct
+            gzipEntry.archivedChecksum = "0000000000000000000000000000000000000000";
+            try {
+                gzipEntry.extract(tempDir, true);
+                fail("Expected IOException");
+            } catch (final IOException e) {
+                assertTrue(e.getMessage().contains("archived"));
+            }
+            gzipEntry.extract(tempDir, false);
+
+            final XarEntry noneEntry = new FileXarSource(noneTestFile).getEntry("file.txt");
+            noneEntry.checksum = "0000000000000000000000000000000000000000";
+            try {
+                noneEntry.extract(tempDir, true);
+                fail("Expected IOException");
+            } catch (final IOException e) {
+                assertTrue(e.getMessage().contains("extracted"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testExtractStoredEntriesTransfersRanges() throws Exception {
+        final File unpackedReferenceDirectory = TestUtil.getClasspathResourceAsFile(UNPACKED_REFERENCE_FILES_DIR_NAME);
+        final File storedArchiveDir = TestUtil.getTempDirectory();
+        final File storedArchiveFile = new File(storedArchiveDir, "stored.xar");
+        storedArchiveDir.mkdirs();
+        final XarPacker packer = new XarPacker(storedArchiveFile);
+        packer.setCompressionPolicy(file -> Compression.NONE);
+        packer.addDirectory(unpackedReferenceDirectory, false, null);
+        packer.write();
+
+        for (final boolean useSharedChannel : new boolean[] { false, true }) {
+            final AtomicInteger transferCount = new AtomicInteger();
+            final FileXarSource xarSource = new FileXarSource(storedArchiveFile, useSharedChannel) {
+                @Override
+                protected boolean transferRange(final long offset, final long length, final File targetFile) throws IOException {
+                    transferCount.incrementAndGet();
+                    return super.transferRange(offset, length, targetFile);
+                }
+            };
+            final File tempDir = TestUtil.getTempDirectory();
+            try {
+                xarSource.extractAll(tempDir, false);
+                assertEquals(4, transferCount.get());
+
+                for (final File referenceFile : FileUtils.listFiles(unpackedReferenceDirectory, null, true)) {
+                    final String relativeFileName = referenceFile.getAbsolutePath().replace(unpackedReferenceDirectory.getAbsolutePath(), "");
+                    assertTrue(relativeFileName, FileUtils.contentEquals(referenceFile, new File(tempDir, relativeFileName)));
+                }
+
+                // verified extraction has to read the data anyway
+                xarSource.extractAll(tempDir, true);
+                assertEquals(4, transferCount.get());
+            } finally {
+                xarSource.close();
+                FileUtils.deleteDirectory(tempDir);
+            }
+        }
+        FileUtils.deleteDirectory(storedArchiveDir);
+    }
+
+    @Test
+    public void testMetricsCountRangesAndExtractedEntries() throws Exception {
+        assertSame(XarMetrics.NONE, gzipXarSource.getMetrics());
+
+        final InMemoryXarMetrics metrics = new InMemoryXarMetrics();
+        gzipXarSource.setMetrics(metrics);
+        final XarHeader header = gzipXarSource.getHeader();
+        final List<XarEntry> entries = gzipXarSource.getEntries();
+        assertEquals(1L, metrics.getCount(XarMetrics.Timer.TOC_PARSE));
+        assertEquals(2L, metrics.get(XarMetrics.Counter.RANGE_REQUESTS));
+        assertEquals(header.getSize().longValue() + header.getTocLengthCompressed().longValue(), metrics.get(XarMetrics.Counter.BYTES_READ));
+
+        long fileCount = 0L;
+        long dataCount = 0L;
+        long length = 0L;
+        long size = 0L;
+        for (final XarEntry entry : entries) {
+            if (!entry.isDirectory()) {
+                fileCount++;
+                if (entry.getEncoding() != null) {
+                    dataCount++;
+                    length += entry.getLength();
+                    size += entry.getSize();
+                }
+            }
+        }
+
+        final File tempDir = TestUtil.getTempDirectory();
+        try {
+            metrics.reset();
+            gzipXarSource.extractAll(tempDir, true);
+            assertEquals(fileCount, metrics.get(XarMetrics.Counter.ENTRIES_EXTRACTED));
+            assertEquals(fileCount, metrics.getCount(XarMetrics.Timer.ENTRY_EXTRACTION));
+            assertEquals(dataCount, metrics.get(XarMetrics.Counter.RANGE_REQUESTS));
+            assertEquals(length, metrics.get(XarMetrics.Counter.BYTES_READ));
+            assertEquals(size, metrics.get(XarMetrics.Counter.BYTES_DECODED));
+            assertEquals(0L, metrics.getCount(XarMetrics.Timer.TOC_PARSE));
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testOpenChannelSeeksWithinEntries() throws Exception {
+        final File tempDir = TestUtil.getTempDirectory();
+        tempDir.mkdirs();
+        try {
+            final Random random = new Random(42L);
+            final StringBuilder content = new StringBuilder();
+            while (content.length() < 512 * 1024) {
+                content.append("line ").append(random.nextInt(100000)).append('\n');
+            }
+            final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            final File compressedFile = new File(tempDir, "compressed.txt");
+            FileUtils.writeByteArrayToFile(compressedFile, bytes);
+            final File storedFile = new File(tempDir, "stored.txt");
+            FileUtils.writeByteArrayToFile(storedFile, bytes);
+
+            final XarSink xarSink = new XarSink();
+            xarSink.addSource(new XarFileSource(compressedFile, Encoding.GZIP, ChecksumAlgorithm.SHA1));
+            xarSink.addSource(new XarFileSource(storedFile, Encoding.NONE, ChecksumAlgorithm.SHA1));
+            final File archiveFile = new File(tempDir, "test.xar");
+            xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+            final FileXarSource xarSource = new FileXarSource(archiveFile);
+            final XarEntry compressedEntry = xarSource.getEntry("compressed.txt");
+            final InflateIndex index = compressedEntry.buildInflateIndex(16 * 1024);
+            assertTrue(index.getCheckpoints().size() > 2);
+
+            try (final SeekableByteChannel compressedChannel = compressedEntry.openChannel(index);
+                 final SeekableByteChannel storedChannel = xarSource.getEntry("stored.txt").openChannel()) {
+                for (final SeekableByteChannel channel : Arrays.asList(compressedChannel, storedChannel)) {
+                    assertEquals(bytes.length, channel.size());
+                    // backwards, forwards within and beyond the next checkpoint, and up to the end
+                    for (final int position : new int[] { bytes.length / 2, 100, 200, 300000, bytes.length - 10 }) {
+                        final ByteBuffer buffer = ByteBuffer.allocate(1000);
+                        channel.position(position);
+                        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                            // keep reading
+                        }
+                        final int count = Math.min(1000, bytes.length - position);
+                        assertEquals(count, buffer.position());
+                        assertEquals(position + count, channel.position());
+                        assertArrayEquals(Arrays.copyOfRange(bytes, position, position + count), Arrays.copyOf(buffer.array(), count));
+                    }
+                }
+            }
+
+            try {
+                xarSource.getEntry("stored.txt").buildInflateIndex(InflateIndex.DEFAULT_SPAN);
+                fail("Expected UnsupportedEncodingException");
+            } catch (final UnsupportedEncodingException expected) {
+                // stored entries need no index
+            }
+        } finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test(expected = XarException.class)
+    public void testGetRangeAfterClose() throws Exception {
+        sharedChannelNoneXarSource.getHeader();
+        sharedChannelNoneXarSource.close();
+        sharedChannelNoneXarSource.getRange(0L, 1L);
+    }
+
     private List<XarSource> getXarFiles() {
-        return Arrays.asList(noneXarSource, gzipXarSource);
+        return Arrays.asList(noneXarSource, gzipXarSource, sharedChannelNoneXarSource, sharedChannelGzipXarSource);
     }
 }
@@ -0,0 +1,181 @@
+package com.sprylab.xar.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.TestUtil;
+import com.sprylab.xar.XarEntry;
+import com.sprylab.xar.XarSource;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+public class CachingXarSourceTest {
+
+    private File testFile;
+
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testFile = TestUtil.getClasspathResourceAsFile("test_gzip.xar");
+        cacheDirectory = TestUtil.getTempDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(cacheDirectory);
+    }
+
+    @Test
+    public void testEntriesAreReadFromCache() throws Exception {
+        final XarSource expectedXarSource = new FileXarSource(testFile);
+        final CountingFileXarSource delegate = new CountingFileXarSource(testFile);
+        // a tiny block size, so that entries span several blocks
+        final CachingXarSource xarSource = new CachingXarSource(delegate, "test", new MemoryBlockCache(1024L * 1024L), 7, 4);
+
+        readAllEntries(expectedXarSource, xarSource);
+        final long missCount = xarSource.getMissCount();
+        final long hitCount = xarSource.getHitCount();
+        delegate.rangeCount.set(0);
+
+        readAllEntries(expectedXarSource, xarSource);
+        assertEquals(0, delegate.rangeCount.get());
+        assertEquals(missCount, xarSource.getMissCount());
+        assertTrue(xarSource.getHitCount() > hitCount);
+    }
+
+    @Test
+    public void testOnlyMissingBlocksAreFetched() throws Exception {
+        final CountingFileXarSource delegate = new CountingFileXarSource(testFile);
+        final ForgettingBlockCache blockCache = new ForgettingBlockCache();
+        final CachingXarSource xarSource = new CachingXarSource(delegate, "test", blockCache, 7, 4);
+        final XarEntry entry = xarSource.getEntry("file.txt");
+        delegate.ranges.clear();
+        final byte[] expectedBytes = entry.getBytes();
+        final long[] firstRange = delegate.ranges.get(0);
+        assertTrue(firstRange[1] > 14L);
+
+        // forget a block in the middle of a range read at once, the blocks around it are still cached
+        blockCache.forget("test#7#" + (firstRange[0] / 7L + 1L));
+        delegate.ranges.clear();
+
+        assertArrayEquals(expectedBytes, entry.getBytes());
+        assertEquals(1, delegate.ranges.size());
+        assertArrayEquals(new long[] {firstRange[0] + 7L, 7L}, delegate.ranges.get(0));
+    }
+
+    private static void readAllEntries(final XarSource expectedXarSource, final XarSource xarSource) throws IOException {
+        for (final XarEntry expected : expectedXarSource.getEntries()) {
+            if (!expected.isDirectory()) {
+                assertArrayEquals(expected.getBytes(), xarSource.getEntry(expected.getName()).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testDiskTierSurvivesNewMemoryTier() throws Exception {
+        final CachingXarSource firstXarSource = new CachingXarSource(new FileXarSource(testFile), "test",
+            new TieredBlockCache(new MemoryBlockCache(1024L), new DiskBlockCache(cacheDirectory, 1024L * 1024L)));
+        final byte[] expectedBytes = firstXarSource.getEntry("file.txt").getBytes();
+
+        final CountingFileXarSource delegate = new CountingFileXarSource(testFile);
+        final CachingXarSource secondXarSource = new CachingXarSource(delegate, "test",
+            new TieredBlockCache(new MemoryBlockCache(1024L), new DiskBlockCache(cacheDirectory, 1024L * 1024L)));
+        assertArrayEquals(expectedBytes, secondXarSource.getEntry("file.txt").getBytes());
+        assertEquals(0, delegate.rangeCount.get());
+        assertEquals(0L, secondXarSource.getMissCount());
+    }
+
+    @Test
+    public void testMemoryBlockCacheEvictsLeastRecentlyUsedBlocks() {
+        final MemoryBlockCache blockCache = new MemoryBlockCache(10L);
+        blockCache.put("a", ByteString.encodeUtf8("aaaa"));
+        blockCache.put("b", ByteString.encodeUtf8("bbbb"));
+        assertNotNull(blockCache.get("a"));
+        blockCache.put("c", ByteString.encodeUtf8("cccc"));
+
+        assertNotNull(blockCache.get("a"));
+        assertNull(blockCache.get("b"));
+        assertNotNull(blockCache.get("c"));
+        assertEquals(8L, blockCache.getSize());
+    }
+
+    @Test
+    public void testDiskBlockCacheEvictsLeastRecentlyUsedBlocks() {
+        final DiskBlockCache blockCache = new DiskBlockCache(cacheDirectory, 10L);
+        blockCache.put("a", ByteString.encodeUtf8("aaaa"));
+        blockCache.put("b", ByteString.encodeUtf8("bbbb"));
+        assertEquals(ByteString.encodeUtf8("aaaa"), blockCache.get("a"));
+        blockCache.put("c", ByteString.encodeUtf8("cccc"));
+
+        assertNotNull(blockCache.get("a"));
+        assertNull(blockCache.get("b"));
+        assertNotNull(blockCache.get("c"));
+        assertEquals(8L, blockCache.getSize());
+        assertEquals(2, cacheDirectory.listFiles().length);
+        assertEquals(8L, new DiskBlockCache(cacheDirectory, 10L).getSize());
+    }
+
+    private static class CountingFileXarSource extends FileXarSource {
+
+        private final AtomicInteger rangeCount = new AtomicInteger();
+
+        private final List<long[]> ranges = new CopyOnWriteArrayList<>();
+
+        CountingFileXarSource(final File file) {
+            super(file);
+        }
+
+        @Override
+        public BufferedSource getRange(final long offset, final long length) throws IOException {
+            rangeCount.incrementAndGet();
+            ranges.add(new long[] {offset, length});
+            return super.getRange(offset, length);
+        }
+    }
+
+    /**
+     * A {@link MemoryBlockCache} which can be told to miss a block, as if only that block had been evicted.
+     */
+    private static class ForgettingBlockCache extends MemoryBlockCache {
+
+        private final Set<String> forgottenKeys = ConcurrentHashMap.newKeySet();
+
+        ForgettingBlockCache() {
+            super(1024L * 1024L);
+        }
+
+        void forget(final String key) {
+            forgottenKeys.add(key);
+        }
+
+        @Override
+        public ByteString get(final String key) {
+            return forgottenKeys.contains(key) ? null : super.get(key);
+        }
+
+        @Override
+        public void put(final String key, final ByteString block) {
+            forgottenKeys.remove(key);
+            super.put(key, block);
+        }
+    }
+}
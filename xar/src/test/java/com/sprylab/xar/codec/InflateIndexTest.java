@@ -0,0 +1,126 @@
+package com.sprylab.xar.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+public class InflateIndexTest {
+
+    private static final long SPAN = 64L * 1024L;
+
+    @Test
+    public void testInflateFromEveryCheckpoint() throws Exception {
+        final ByteString content = createContent();
+        final int[][] settings = {
+            {Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY},
+            {Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY},
+            {Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY},
+            {Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY},
+            {Deflater.DEFAULT_COMPRESSION, Deflater.FILTERED}
+        };
+        for (final int[] setting : settings) {
+            final ByteString compressed = deflate(content, setting[0], setting[1]);
+            final InflateIndex index = InflateIndex.build(new Buffer().write(compressed), SPAN);
+
+            assertThat(index.getSpan()).isEqualTo(SPAN);
+            assertThat(index.getCompressedSize()).isEqualTo(compressed.size());
+            assertThat(index.getUncompressedSize()).isEqualTo(content.size());
+            assertThat(index.getCheckpoints().size()).isGreaterThan(4);
+            assertThat(index.getCheckpoints().get(0).getUncompressedOffset()).isZero();
+
+            assertCheckpointsInflate(index, compressed, content);
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final ByteString content = createContent();
+        final ByteString compressed = deflate(content, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        final InflateIndex index = InflateIndex.build(new Buffer().write(compressed), SPAN);
+
+        final Buffer persisted = new Buffer();
+        index.write(persisted);
+        final InflateIndex readIndex = InflateIndex.read(persisted);
+
+        assertThat(persisted.exhausted()).isTrue();
+        assertThat(readIndex.getSpan()).isEqualTo(index.getSpan());
+        assertThat(readIndex.getCompressedSize()).isEqualTo(index.getCompressedSize());
+        assertThat(readIndex.getUncompressedSize()).isEqualTo(index.getUncompressedSize());
+        assertThat(readIndex.getCheckpoints()).hasSameSizeAs(index.getCheckpoints());
+        assertCheckpointsInflate(readIndex, compressed, content);
+
+        final long offset = content.size() / 2;
+        assertThat(readIndex.getCheckpoint(offset).getUncompressedOffset()).isEqualTo(index.getCheckpoint(offset).getUncompressedOffset())
+            .isLessThanOrEqualTo(offset)
+            .isGreaterThan(offset - 2 * SPAN);
+    }
+
+    @Test
+    public void testBuildVerifiesChecksum() throws Exception {
+        final ByteString compressed = deflate(createContent(), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        final Buffer corrupted = new Buffer().write(compressed.substring(0, compressed.size() - 1)).writeByte(compressed.getByte(
+            compressed.size() - 1) ^ 1);
+
+        assertThatThrownBy(() -> InflateIndex.build(corrupted, SPAN)).isInstanceOf(IOException.class).hasMessageContaining("Adler-32");
+    }
+
+    private static void assertCheckpointsInflate(final InflateIndex index, final ByteString compressed, final ByteString content)
+        throws IOException {
+        for (final InflateIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+            final Buffer source = new Buffer().write(compressed.substring((int) checkpoint.getCompressedOffset()));
+            try (final BufferedSource inflated = Okio.buffer(index.inflate(checkpoint, source))) {
+                final int offset = (int) checkpoint.getUncompressedOffset();
+                final int length = (int) Math.min(2 * SPAN, content.size() - offset);
+                assertThat(inflated.readByteString(length)).isEqualTo(content.substring(offset, offset + length));
+            }
+        }
+    }
+
+    private static ByteString deflate(final ByteString content, final int level, final int strategy) {
+        final Buffer compressed = new Buffer();
+        final Deflater deflater = new Deflater(level);
+        try {
+            deflater.setStrategy(strategy);
+            deflater.setInput(content.toByteArray());
+            deflater.finish();
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        return compressed.readByteString();
+    }
+
+    /**
+     * Creates 1 MiB of text-like data with random sections, so that the stream has stored, fixed and dynamic blocks.
+     */
+    private static ByteString createContent() {
+        final Random random = new Random(42L);
+        final Buffer buffer = new Buffer();
+        final String[] words = {"xar", "archive", "entry", "checkpoint", "inflate", "window", "block", "offset"};
+        while (buffer.size() < 1024L * 1024L) {
+            if (random.nextInt(20) == 0) {
+                final byte[] noise = new byte[random.nextInt(8192)];
+                random.nextBytes(noise);
+                buffer.write(noise);
+            } else {
+                for (int i = 0; i < 256; i++) {
+                    buffer.writeUtf8(words[random.nextInt(words.length)]).writeByte(random.nextInt(10) == 0 ? '\n' : ' ');
+                }
+            }
+        }
+        return buffer.readByteString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.sprylab.xar.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+import org.junit.Test;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+public class Lz4CodecTest {
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    @Test
+    public void testDecodeFramesWithAllBlockParameters() throws Exception {
+        final ByteString content = createContent();
+        final FramedLZ4CompressorOutputStream.Parameters[] parameters = {
+            FramedLZ4CompressorOutputStream.Parameters.DEFAULT,
+            new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.K64),
+            new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.K64, true, true, true),
+            new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.K256, false, true, false),
+            new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.M1, true, false, true,
+                BlockLZ4CompressorOutputStream.createParameterBuilder().tunedForCompressionRatio().build())
+        };
+        for (final FramedLZ4CompressorOutputStream.Parameters parameter : parameters) {
+            assertThat(decode(compress(content, parameter))).as(parameter.toString()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final ByteString content = createContent();
+
+        final Buffer encoded = new Buffer();
+        try (final BufferedSink sink = Okio.buffer(codec.encode(encoded))) {
+            sink.write(content);
+        }
+
+        assertThat(encoded.size()).isLessThan(content.size());
+        assertThat(decode(encoded.readByteString())).isEqualTo(content);
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws Exception {
+        final Buffer encoded = new Buffer();
+        codec.encode(encoded).close();
+
+        assertThat(decode(encoded.readByteString())).isEqualTo(ByteString.EMPTY);
+    }
+
+    @Test
+    public void testDecodeSixteenBytesWrittenByCommonsCompress() throws Exception {
+        final ByteString content = ByteString.encodeUtf8("sixteen bytes!!\n");
+
+        assertThat(decode(compress(content, FramedLZ4CompressorOutputStream.Parameters.DEFAULT))).isEqualTo(content);
+    }
+
+    @Test
+    public void testDecodeVerifiesContentChecksum() throws Exception {
+        final ByteString compressed = compress(createContent(), FramedLZ4CompressorOutputStream.Parameters.DEFAULT);
+        final Buffer corrupted = new Buffer().write(compressed.substring(0, compressed.size() - 1)).writeByte(compressed.getByte(
+            compressed.size() - 1) ^ 1);
+
+        assertThatThrownBy(() -> decode(corrupted.readByteString())).isInstanceOf(IOException.class).hasMessageContaining("checksum");
+    }
+
+    @Test
+    public void testDecodeRejectsTruncatedData() throws Exception {
+        final ByteString compressed = compress(createContent(), FramedLZ4CompressorOutputStream.Parameters.DEFAULT);
+
+        assertThatThrownBy(() -> decode(compressed.substring(0, compressed.size() / 2))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testDecodeRejectsOtherFormats() {
+        assertThatThrownBy(() -> decode(ByteString.encodeUtf8("not compressed"))).isInstanceOf(IOException.class)
+            .hasMessageContaining("LZ4 frame format");
+    }
+
+    @Test
+    public void testXxHash32MatchesCommonsCompress() {
+        final byte[] data = createContent().toByteArray();
+        // commons-compress hashes exactly 16 bytes differently, see XxHash32#matches
+        final int[] lengths = {0, 1, 3, 4, 15, 17, 32, 33, 1000, data.length};
+        for (final int length : lengths) {
+            final XXHash32 expected = new XXHash32();
+            expected.update(data, 0, length);
+
+            final XxHash32 actual = new XxHash32(0);
+            // feed the data in uneven chunks to exercise the pending stripe
+            for (int offset = 0; offset < length; offset += 7) {
+                actual.update(data, offset, Math.min(7, length - offset));
+            }
+
+            assertThat(actual.getValue()).as("length %d", length).isEqualTo((int) expected.getValue())
+                .isEqualTo(XxHash32.hash(data, 0, length, 0));
+        }
+    }
+
+    private ByteString decode(final ByteString compressed) throws IOException {
+        try (final BufferedSource source = Okio.buffer(codec.decode(new Buffer().write(compressed)))) {
+            return source.readByteString();
+        }
+    }
+
+    private static ByteString compress(final ByteString content, final FramedLZ4CompressorOutputStream.Parameters parameters)
+        throws IOException {
+        final Buffer compressed = new Buffer();
+        try (final OutputStream outputStream = new FramedLZ4CompressorOutputStream(compressed.outputStream(), parameters)) {
+            content.write(outputStream);
+        }
+        return compressed.readByteString();
+    }
+
+    /**
+     * Creates 2 MiB of text-like data with random sections, so that the frames have compressed and uncompressed blocks.
+     */
+    private static ByteString createContent() {
+        final Random random = new Random(42L);
+        final Buffer buffer = new Buffer();
+        final String[] words = {"xar", "archive", "entry", "lz4", "frame", "block", "literal", "match"};
+        while (buffer.size() < 2L * 1024L * 1024L) {
+            if (random.nextInt(20) == 0) {
+                final byte[] noise = new byte[random.nextInt(300_000)];
+                random.nextBytes(noise);
+                buffer.write(noise);
+            } else {
+                for (int i = 0; i < 256; i++) {
+                    buffer.writeUtf8(words[random.nextInt(words.length)]).writeByte(random.nextInt(10) == 0 ? '\n' : ' ');
+                }
+            }
+        }
+        return buffer.readByteString();
+    }
+}
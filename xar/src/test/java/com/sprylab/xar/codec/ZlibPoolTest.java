@@ -0,0 +1,93 @@
+package com.sprylab.xar.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+public class ZlibPoolTest {
+
+    @Test
+    public void testRoundTripReusesInstances() throws Exception {
+        final ZlibPool pool = new ZlibPool(1);
+        final ByteString content = createContent();
+
+        for (int i = 0; i < 3; i++) {
+            final Buffer compressed = new Buffer();
+            try (final BufferedSink sink = Okio.buffer(pool.deflate(compressed, Deflater.DEFAULT_COMPRESSION, Deflater.FILTERED))) {
+                sink.write(content);
+            }
+            // the output is a regular zlib stream
+            assertThat(IOUtils.toByteArray(new InflaterInputStream(compressed.clone().inputStream()))).isEqualTo(content.toByteArray());
+
+            try (final BufferedSource source = Okio.buffer(pool.inflate(compressed))) {
+                assertThat(source.readByteString()).isEqualTo(content);
+            }
+        }
+
+        assertThat(pool.getCreatedDeflaterCount()).isEqualTo(1L);
+        assertThat(pool.getReusedDeflaterCount()).isEqualTo(2L);
+        assertThat(pool.getCreatedInflaterCount()).isEqualTo(1L);
+        assertThat(pool.getReusedInflaterCount()).isEqualTo(2L);
+        assertThat(pool.getIdleDeflaterCount()).isEqualTo(1);
+        assertThat(pool.getIdleInflaterCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSurplusInstancesAreEnded() throws Exception {
+        final ZlibPool pool = new ZlibPool(1);
+        final Buffer compressed = new Buffer();
+        try (final BufferedSink sink = Okio.buffer(pool.deflate(compressed, Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY))) {
+            sink.write(createContent());
+        }
+
+        final BufferedSource first = Okio.buffer(pool.inflate(compressed.clone()));
+        final BufferedSource second = Okio.buffer(pool.inflate(compressed.clone()));
+        assertThat(pool.getCreatedInflaterCount()).isEqualTo(2L);
+        first.close();
+        second.close();
+        // closing twice must not release the inflater twice
+        second.close();
+
+        assertThat(pool.getIdleInflaterCount()).isEqualTo(1);
+        assertThat(pool.getEndedInflaterCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testFlushEmitsAllWrittenData() throws Exception {
+        final ZlibPool pool = new ZlibPool(0);
+        final ByteString content = createContent();
+        final Buffer compressed = new Buffer();
+        final BufferedSink sink = Okio.buffer(pool.deflate(compressed, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY));
+        sink.write(content);
+        sink.flush();
+
+        // everything written so far can be inflated before the stream is finished
+        final Buffer partial = compressed.clone();
+        try (final BufferedSource source = Okio.buffer(pool.inflate(partial))) {
+            assertThat(source.readByteString(content.size())).isEqualTo(content);
+        }
+        sink.close();
+        assertThat(pool.getEndedDeflaterCount()).isEqualTo(1L);
+    }
+
+    private static ByteString createContent() {
+        final byte[] bytes = new byte[100 * 1024];
+        final Random random = new Random(42L);
+        for (int i = 0; i < bytes.length; i++) {
+            // compressible, but not trivially so
+            bytes[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return ByteString.of(bytes);
+    }
+}
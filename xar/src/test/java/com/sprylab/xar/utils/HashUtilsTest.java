@@ -8,6 +8,9 @@ import org.junit.Test;
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 
 import okio.Buffer;
+import okio.HashingSink;
+import okio.HashingSource;
+import okio.Okio;
 
 public class HashUtilsTest {
 
@@ -17,6 +20,11 @@ public class HashUtilsTest {
 
     private static final String HASH_VALUE_MD5 = "900150983cd24fb0d6963f7d28e17f72";
 
+    private static final String HASH_VALUE_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private static final String HASH_VALUE_SHA512 = "ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a"
+        + "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f";
+
     private Buffer buffer;
 
     @Before
@@ -30,6 +38,8 @@ public class HashUtilsTest {
         assertHash(HashUtils.hashHex(buffer, ChecksumAlgorithm.NONE), null);
         assertHash(HashUtils.hashHex(buffer, ChecksumAlgorithm.SHA1), HASH_VALUE_SHA1);
         assertHash(HashUtils.hashHex(buffer, ChecksumAlgorithm.MD5), HASH_VALUE_MD5);
+        assertHash(HashUtils.hashHex(buffer, ChecksumAlgorithm.SHA256), HASH_VALUE_SHA256);
+        assertHash(HashUtils.hashHex(buffer, ChecksumAlgorithm.SHA512), HASH_VALUE_SHA512);
     }
 
     @Test
@@ -42,6 +52,35 @@ public class HashUtilsTest {
         assertHash(HashUtils.md5Hex(buffer), HASH_VALUE_MD5);
     }
 
+    @Test
+    public void testDigestHex() throws Exception {
+        assertThat(HashUtils.digestHex(buffer.clone(), ChecksumAlgorithm.NONE)).isNull();
+        assertThat(HashUtils.digestHex(buffer.clone(), ChecksumAlgorithm.SHA1)).isEqualTo(HASH_VALUE_SHA1);
+        assertThat(HashUtils.digestHex(buffer.clone(), ChecksumAlgorithm.MD5)).isEqualTo(HASH_VALUE_MD5);
+        assertThat(HashUtils.digestHex(buffer.clone(), ChecksumAlgorithm.SHA256)).isEqualTo(HASH_VALUE_SHA256);
+        assertThat(HashUtils.digestHex(buffer.clone(), ChecksumAlgorithm.SHA512)).isEqualTo(HASH_VALUE_SHA512);
+    }
+
+    @Test
+    public void testHashingSinkAndSource() throws Exception {
+        final Buffer sinkBuffer = new Buffer();
+        final HashingSink hashingSink = HashUtils.hashingSink(sinkBuffer, ChecksumAlgorithm.SHA1);
+        // write in chunks smaller than a segment to check hashing is incremental
+        for (final char c : HASH_INPUT.toCharArray()) {
+            final Buffer chunk = new Buffer().writeUtf8(String.valueOf(c));
+            hashingSink.write(chunk, chunk.size());
+        }
+        assertThat(HashUtils.hashHex(hashingSink)).isEqualTo(HASH_VALUE_SHA1);
+        assertThat(sinkBuffer.readUtf8()).isEqualTo(HASH_INPUT);
+
+        final HashingSource hashingSource = HashUtils.hashingSource(buffer.clone(), ChecksumAlgorithm.MD5);
+        assertThat(Okio.buffer(hashingSource).readUtf8()).isEqualTo(HASH_INPUT);
+        assertThat(HashUtils.hashHex(hashingSource)).isEqualTo(HASH_VALUE_MD5);
+
+        assertThat(HashUtils.hashingSink(sinkBuffer, ChecksumAlgorithm.NONE)).isNull();
+        assertThat(HashUtils.hashHex((HashingSink) null)).isNull();
+    }
+
     private void assertHash(final String actualHash, final String expectedHash) {
         final Buffer clonedBuffer = buffer.clone();
         assertThat(actualHash).isEqualTo(expectedHash);
@@ -0,0 +1,77 @@
+package com.sprylab.xar.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sprylab.xar.TestUtil;
+
+import okio.Buffer;
+
+public class RandomAccessFileSourceTest {
+
+    /**
+     * The size of the test file, 3 GiB by default. It is created as a sparse file, which may be written to disk completely on file systems
+     * without support for them, so it can be changed with {@code -Dxar.test.largeFileSize=<bytes>}. The tests are skipped if it does not
+     * exceed 2 GiB.
+     */
+    private static final long LARGE_FILE_SIZE = Long.getLong("xar.test.largeFileSize", 3L * 1024L * 1024L * 1024L);
+
+    private static final long MARKER_OFFSET = LARGE_FILE_SIZE - 1024L;
+
+    private static final byte[] MARKER = "xar!".getBytes();
+
+    private File tempDirectory;
+
+    private File largeFile;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("large file tests disabled", LARGE_FILE_SIZE > Integer.MAX_VALUE + 1024L);
+
+        tempDirectory = TestUtil.getTempDirectory();
+        largeFile = new File(tempDirectory, "large.bin");
+        FileUtils.forceMkdir(tempDirectory);
+
+        // creates a sparse file on most file systems, so this is cheap
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(largeFile, "rw")) {
+            randomAccessFile.setLength(LARGE_FILE_SIZE);
+            randomAccessFile.seek(MARKER_OFFSET);
+            randomAccessFile.write(MARKER);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDirectory);
+    }
+
+    @Test
+    public void testReadBeyond2GB() throws Exception {
+        try (final RandomAccessFileSource source = new RandomAccessFileSource(largeFile, MARKER_OFFSET, MARKER.length)) {
+            final Buffer buffer = new Buffer();
+            while (source.read(buffer, Long.MAX_VALUE) != -1L) {
+                // read until exhausted
+            }
+            assertThat(buffer.readByteArray()).isEqualTo(MARKER);
+        }
+    }
+
+    @Test
+    public void testReadWithLengthBeyond2GB() throws Exception {
+        try (final RandomAccessFileSource source = new RandomAccessFileSource(largeFile, 0L, LARGE_FILE_SIZE)) {
+            final Buffer buffer = new Buffer();
+            final long bytesRead = source.read(buffer, Long.MAX_VALUE);
+            assertThat(bytesRead).isPositive();
+            assertThat(buffer.size()).isEqualTo(bytesRead);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.sprylab.xar.writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.TestUtil;
+import com.sprylab.xar.toc.model.Encoding;
+import com.sprylab.xar.toc.model.EncodingEnumTransform;
+
+public class AdaptiveCompressionPolicyTest {
+
+    private File tempDirectory;
+
+    private File sourceDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDirectory = TestUtil.getTempDirectory();
+        sourceDirectory = new File(tempDirectory, "source");
+        FileUtils.forceMkdir(sourceDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDirectory);
+    }
+
+    @Test
+    public void testCompressesOnlyCompressibleContent() throws Exception {
+        final byte[] randomBytes = new byte[32 * 1024];
+        new Random(42L).nextBytes(randomBytes);
+        // incompressible content with an extension usually compressed
+        final File randomFile = new File(sourceDirectory, "random.txt");
+        FileUtils.writeByteArrayToFile(randomFile, randomBytes);
+        // compressible content with an unknown extension
+        final File textFile = new File(sourceDirectory, "text.dat");
+        FileUtils.writeStringToFile(textFile, StringUtils.repeat("<p>compressible text</p>\n", 2048), "UTF-8");
+        final File smallFile = new File(sourceDirectory, "small.txt");
+        FileUtils.writeStringToFile(smallFile, "aaaaaaaaaaaaaaaa", "UTF-8");
+
+        final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy();
+        assertThat(policy.getCompression(randomFile)).isSameAs(Compression.NONE);
+        assertThat(policy.getCompression(textFile).getCodec().getStyle()).isEqualTo(EncodingEnumTransform.MIME_TYPE_GZIP);
+        assertThat(policy.getCompression(textFile).isStoreIfNotSmaller()).isTrue();
+        assertThat(policy.getCompression(smallFile)).isSameAs(Compression.NONE);
+
+        final File archiveFile = new File(tempDirectory, "adaptive.xar");
+        final XarPacker packer = new XarPacker(archiveFile);
+        packer.setCompressionPolicy(policy);
+        packer.addDirectory(sourceDirectory, false, null);
+        packer.write();
+
+        final FileXarSource xarSource = new FileXarSource(archiveFile);
+        assertThat(xarSource.getEntry("random.txt").getEncoding()).isEqualTo(Encoding.NONE);
+        assertThat(xarSource.getEntry("text.dat").getEncoding()).isEqualTo(Encoding.GZIP);
+        assertThat(xarSource.getEntry("text.dat").getBytes()).isEqualTo(FileUtils.readFileToByteArray(textFile));
+        assertThat(xarSource.getEntry("random.txt").getBytes()).isEqualTo(randomBytes);
+    }
+
+    @Test
+    public void testCompressesRepetitiveContentWithEvenlyDistributedBytes() throws Exception {
+        // every byte value occurs equally often, so the byte entropy is 8 bits, but the content repeats
+        final byte[] allValues = new byte[256 * 256];
+        for (int i = 0; i < allValues.length; i++) {
+            allValues[i] = (byte) i;
+        }
+        final File file = new File(sourceDirectory, "table.bin");
+        FileUtils.writeByteArrayToFile(file, allValues);
+
+        final Compression compression = new AdaptiveCompressionPolicy().getCompression(file);
+        assertThat(compression.getCodec().getStyle()).isEqualTo(EncodingEnumTransform.MIME_TYPE_GZIP);
+        assertThat(AdaptiveCompressionPolicy.getCompressionRatio(allValues)).isLessThan(0.1);
+    }
+}
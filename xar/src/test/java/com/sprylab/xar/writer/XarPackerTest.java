@@ -0,0 +1,94 @@
+package com.sprylab.xar.writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sprylab.xar.FileXarSource;
+import com.sprylab.xar.TestUtil;
+import com.sprylab.xar.XarHeader;
+import com.sprylab.xar.toc.model.Encoding;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+public class XarPackerTest {
+
+    private File tempDirectory;
+
+    private File unpackedDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDirectory = TestUtil.getTempDirectory();
+        FileUtils.forceMkdir(tempDirectory);
+        unpackedDirectory = TestUtil.getClasspathResourceAsFile("unpacked");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDirectory);
+    }
+
+    @Test
+    public void testParallelWriteIsIdenticalToSerialWrite() throws Exception {
+        final File serialArchiveFile = new File(tempDirectory, "serial.xar");
+        final XarPacker serialPacker = new XarPacker(serialArchiveFile, true);
+        serialPacker.addDirectory(unpackedDirectory, false, null);
+        serialPacker.write();
+
+        final File parallelArchiveFile = new File(tempDirectory, "parallel.xar");
+        final XarPacker parallelPacker = new XarPacker(parallelArchiveFile, true);
+        parallelPacker.addDirectory(unpackedDirectory, false, null);
+        parallelPacker.write(4);
+
+        // the creation time of the table of contents may differ, so only the heaps without the checksum of the toc are compared
+        assertThat(readHeap(parallelArchiveFile)).isEqualTo(readHeap(serialArchiveFile));
+
+        final FileXarSource xarSource = new FileXarSource(parallelArchiveFile);
+        assertThat(xarSource.getEntry("file.txt").getBytes())
+            .isEqualTo(FileUtils.readFileToByteArray(new File(unpackedDirectory, "file.txt")));
+        assertThat(xarSource.getEntry("dir/subdir1/subsubdir_3/1.txt").getBytes())
+            .isEqualTo(FileUtils.readFileToByteArray(new File(unpackedDirectory, "dir/subdir1/subsubdir_3/1.txt")));
+    }
+
+    @Test
+    public void testCompressionPolicyIsAppliedPerFile() throws Exception {
+        final File sourceDirectory = new File(tempDirectory, "source");
+        final File largeFile = new File(sourceDirectory, "large.txt");
+        FileUtils.writeStringToFile(largeFile, StringUtils.repeat("large ", 1024), "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory, "small.txt"), "small", "UTF-8");
+
+        final File archiveFile = new File(tempDirectory, "policy.xar");
+        final XarPacker packer = new XarPacker(archiveFile);
+        packer.setCompressionPolicy(file -> file.length() >= 1024L
+            ? Compression.gzip(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, true)
+            : Compression.NONE);
+        packer.setTocCompressionLevel(Deflater.DEFAULT_COMPRESSION);
+        packer.addDirectory(sourceDirectory, true, null);
+        packer.write();
+
+        final FileXarSource xarSource = new FileXarSource(archiveFile);
+        assertThat(xarSource.getEntry("source/large.txt").getEncoding()).isEqualTo(Encoding.GZIP);
+        assertThat(xarSource.getEntry("source/small.txt").getEncoding()).isEqualTo(Encoding.NONE);
+        assertThat(xarSource.getEntry("source/large.txt").getBytes()).isEqualTo(FileUtils.readFileToByteArray(largeFile));
+    }
+
+    private static ByteString readHeap(final File archiveFile) throws Exception {
+        final FileXarSource xarSource = new FileXarSource(archiveFile);
+        final XarHeader header = xarSource.getHeader();
+        // skip the checksum of the table of contents at the start of the heap
+        final long heapOffset = header.getSize().longValue() + header.getTocLengthCompressed().longValue()
+            + header.getChecksumAlgorithm().getDigestLength();
+        try (final BufferedSource source = xarSource.getRange(heapOffset, xarSource.getSize() - heapOffset)) {
+            return source.readByteString();
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.sprylab.xar.writer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,9 +23,19 @@ import org.junit.Test;
 import com.sprylab.xar.FileXarSource;
 import com.sprylab.xar.TestUtil;
 import com.sprylab.xar.XarEntry;
+import com.sprylab.xar.XarHeader;
+import com.sprylab.xar.codec.Lz4Codec;
+import com.sprylab.xar.codec.XarCodec;
+import com.sprylab.xar.codec.XarCodecs;
+import com.sprylab.xar.metrics.InMemoryXarMetrics;
+import com.sprylab.xar.metrics.XarMetrics;
 import com.sprylab.xar.toc.model.ChecksumAlgorithm;
 import com.sprylab.xar.toc.model.Encoding;
 
+import okio.BufferedSource;
+import okio.Sink;
+import okio.Source;
+
 public class XarSinkTest {
 
     private XarSink xarSink;
@@ -52,6 +72,26 @@ public class XarSinkTest {
         assertThatEntryEqualsFile(entry, fileToCompress);
     }
 
+    @Test
+    public void testMetricsCountWrittenEntriesAndBytes() throws Exception {
+        final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToStore = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+        xarSink.addSource(new XarFileSource(fileToCompress, Encoding.GZIP, ChecksumAlgorithm.SHA1));
+        xarSink.addSource(new XarFileSource(fileToStore, Encoding.NONE, ChecksumAlgorithm.SHA1));
+
+        final InMemoryXarMetrics metrics = new InMemoryXarMetrics();
+        xarSink.setMetrics(metrics);
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        assertThat(metrics.get(XarMetrics.Counter.ENTRIES_WRITTEN)).isEqualTo(2L);
+        assertThat(metrics.get(XarMetrics.Counter.BYTES_WRITTEN)).isEqualTo(archiveFile.length());
+        assertThat(metrics.getCount(XarMetrics.Timer.ENTRY_WRITE)).isEqualTo(2L);
+        assertThat(metrics.getCount(XarMetrics.Timer.ARCHIVE_WRITE)).isEqualTo(1L);
+        assertThat(metrics.getMaxTime(XarMetrics.Timer.ARCHIVE_WRITE, TimeUnit.NANOSECONDS))
+            .isGreaterThanOrEqualTo(metrics.getMaxTime(XarMetrics.Timer.ENTRY_WRITE, TimeUnit.NANOSECONDS));
+        assertThat(metrics.toString()).contains("ENTRIES_WRITTEN=2", "ARCHIVE_WRITE={count=1");
+    }
+
     @Test
     public void testAddCompressedAndHashedFileSourceToRoot() throws Exception {
         final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
@@ -68,6 +108,206 @@ public class XarSinkTest {
         assertThatEntryEqualsFile(entry, fileToCompress);
     }
 
+    @Test
+    public void testAddSpooledFileSourcesToRoot() throws Exception {
+        final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToStore = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+
+        xarSink.addSource(new XarFileSource(fileToCompress, Compression.GZIP, ChecksumAlgorithm.SHA1, true));
+        xarSink.addSource(new XarFileSource(fileToStore, Compression.NONE, ChecksumAlgorithm.SHA1, true));
+
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        assertThat(archiveFile).exists();
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("file.txt"), fileToCompress);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("1.txt"), fileToStore);
+    }
+
+    @Test
+    public void testWriteTwiceAndDeleteSpoolFilesOnClose() throws Exception {
+        final File fileToSpool = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToBuffer = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+        final Set<String> spoolFiles = listSpoolFiles();
+
+        xarSink.addSource(new XarFileSource(fileToSpool, Compression.GZIP, ChecksumAlgorithm.SHA1, true));
+        xarSink.addSource(new XarFileSource(fileToBuffer, Compression.GZIP, ChecksumAlgorithm.SHA1, false));
+        assertThat(listSpoolFiles()).containsAll(spoolFiles).hasSize(spoolFiles.size() + 1);
+
+        final File secondArchiveFile = new File(tempDirectory, "second.xar");
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+        xarSink.write(FileUtils.openOutputStream(secondArchiveFile));
+        for (final File file : new File[] { archiveFile, secondArchiveFile }) {
+            final FileXarSource fileXarSource = new FileXarSource(file);
+            assertThatEntryEqualsFile(fileXarSource.getEntry("file.txt"), fileToSpool);
+            assertThatEntryEqualsFile(fileXarSource.getEntry("1.txt"), fileToBuffer);
+        }
+
+        xarSink.close();
+        assertThat(listSpoolFiles()).isEqualTo(spoolFiles);
+        assertThatThrownBy(() -> xarSink.write(FileUtils.openOutputStream(archiveFile))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static Set<String> listSpoolFiles() {
+        final String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("xar")
+            && name.endsWith(".spool"));
+        return names == null ? Collections.emptySet() : new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testAddBzip2CompressedFileSourcesToRoot() throws Exception {
+        final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToSpool = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+
+        xarSink.addSource(new XarFileSource(fileToCompress, Encoding.BZIP2, ChecksumAlgorithm.SHA1));
+        xarSink.addSource(new XarFileSource(fileToSpool, new Compression(XarCodecs.BZIP2, false), ChecksumAlgorithm.MD5, true));
+
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        assertThat(fileXarSource.getEntry("file.txt").getEncoding()).isEqualTo(Encoding.BZIP2);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("file.txt"), fileToCompress);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("1.txt"), fileToSpool);
+
+        final File extractDirectory = new File(tempDirectory, "extracted");
+        fileXarSource.extractAll(extractDirectory, true);
+        assertThat(new File(extractDirectory, "file.txt")).hasSameBinaryContentAs(fileToCompress);
+    }
+
+    @Test
+    public void testAddLz4CompressedFileSourcesToRoot() throws Exception {
+        final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToSpool = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+
+        final Compression compression = new Compression(XarCodecs.LZ4, false);
+        xarSink.addSource(new XarFileSource(fileToCompress, compression, ChecksumAlgorithm.SHA1, false));
+        xarSink.addSource(new LazyXarFileSource(fileToSpool, compression, ChecksumAlgorithm.MD5));
+
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        assertThat(fileXarSource.getEntry("file.txt").getEncoding()).isEqualTo(Encoding.OTHER);
+        assertThat(fileXarSource.getEntry("file.txt").getEncodingStyle()).isEqualTo(Lz4Codec.STYLE);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("file.txt"), fileToCompress);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("1.txt"), fileToSpool);
+    }
+
+    @Test
+    public void testCustomCodecIsUsedOnceRegistered() throws Exception {
+        final File file = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final XarCodec codec = new XarCodec() {
+            @Override
+            public String getStyle() {
+                return "application/x-xar-test-identity";
+            }
+
+            @Override
+            public Source decode(final Source source) {
+                return source;
+            }
+
+            @Override
+            public Sink encode(final Sink sink) {
+                return sink;
+            }
+        };
+
+        xarSink.addSource(new XarFileSource(file, new Compression(codec, false), ChecksumAlgorithm.SHA1, false));
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final XarEntry entry = new FileXarSource(archiveFile).getEntry("file.txt");
+        assertThat(entry.getEncoding()).isEqualTo(Encoding.OTHER);
+        assertThatThrownBy(entry::getBytes).isInstanceOf(UnsupportedEncodingException.class);
+
+        XarCodecs.register(codec);
+        try {
+            assertThatEntryEqualsFile(entry, file);
+        } finally {
+            assertThat(XarCodecs.unregister(codec)).isTrue();
+        }
+        assertThat(XarCodecs.forStyle(codec.getStyle())).isNull();
+    }
+
+    @Test
+    public void testIncompressibleContentIsStoredIfNotSmaller() throws Exception {
+        final File compressibleFile = new File(tempDirectory, "compressible.txt");
+        FileUtils.writeStringToFile(compressibleFile, StringUtils.repeat("compressible ", 1024), "UTF-8");
+        final File randomFile = new File(tempDirectory, "random.bin");
+        final byte[] randomBytes = new byte[16 * 1024];
+        new Random(42L).nextBytes(randomBytes);
+        FileUtils.writeByteArrayToFile(randomFile, randomBytes);
+        final File lazyRandomFile = new File(tempDirectory, "lazy_random.bin");
+        FileUtils.copyFile(randomFile, lazyRandomFile);
+
+        final Compression compression = Compression.gzip(Deflater.BEST_SPEED, Deflater.FILTERED, true);
+        xarSink.addSource(new XarFileSource(compressibleFile, compression, ChecksumAlgorithm.SHA1, false));
+        xarSink.addSource(new XarFileSource(randomFile, compression, ChecksumAlgorithm.SHA1, false));
+        xarSink.addSource(new LazyXarFileSource(lazyRandomFile, compression, ChecksumAlgorithm.MD5));
+        xarSink.setTocCompressionLevel(Deflater.BEST_SPEED);
+
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        assertThat(fileXarSource.getEntry("compressible.txt").getEncoding()).isEqualTo(Encoding.GZIP);
+        assertThat(fileXarSource.getEntry("random.bin").getEncoding()).isEqualTo(Encoding.NONE);
+        assertThat(fileXarSource.getEntry("lazy_random.bin").getEncoding()).isEqualTo(Encoding.NONE);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("compressible.txt"), compressibleFile);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("random.bin"), randomFile);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("lazy_random.bin"), lazyRandomFile);
+    }
+
+    @Test
+    public void testSha256AndSha512Checksums() throws Exception {
+        final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
+        final File fileToStore = TestUtil.getClasspathResourceAsFile("unpacked/dir/subdir1/subsubdir_3/1.txt");
+
+        final XarSink sha256XarSink = new XarSink(ChecksumAlgorithm.SHA256);
+        sha256XarSink.addSource(new XarFileSource(fileToCompress, Encoding.GZIP, ChecksumAlgorithm.SHA512));
+        sha256XarSink.addSource(new XarFileSource(fileToStore, Encoding.NONE, ChecksumAlgorithm.SHA256));
+        sha256XarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        final XarHeader header = fileXarSource.getHeader();
+        assertThat(header.getCksumAlg().intValue()).isEqualTo(ChecksumAlgorithm.HEADER_ID_OTHER);
+        assertThat(header.getCksumName()).isEqualTo("sha256");
+        assertThat(header.getChecksumAlgorithm()).isEqualTo(ChecksumAlgorithm.SHA256);
+        assertThat(header.getSize().intValue()).isEqualTo(64);
+
+        // the checksum of the table of contents is stored at the start of the heap
+        final long tocOffset = header.getSize().longValue();
+        final long tocLength = header.getTocLengthCompressed().longValue();
+        try (final BufferedSource tocSource = fileXarSource.getRange(tocOffset, tocLength);
+             final BufferedSource checksumSource = fileXarSource.getRange(tocOffset + tocLength, 32L)) {
+            assertThat(checksumSource.readByteString()).isEqualTo(tocSource.readByteString().sha256());
+        }
+
+        final XarEntry compressedEntry = fileXarSource.getEntry("file.txt");
+        assertThat(compressedEntry.getChecksumAlgorithm()).isEqualTo(ChecksumAlgorithm.SHA512);
+        assertThat(compressedEntry.getArchivedChecksumAlgorithm()).isEqualTo(ChecksumAlgorithm.SHA512);
+        assertThatEntryEqualsFile(compressedEntry, fileToCompress);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("1.txt"), fileToStore);
+
+        final File extractDirectory = new File(tempDirectory, "extracted");
+        fileXarSource.extractAll(extractDirectory, true);
+        assertThat(new File(extractDirectory, "file.txt")).hasSameBinaryContentAs(fileToCompress);
+    }
+
+    @Test
+    public void testLazyFileSourceIsReadWhenWritten() throws Exception {
+        final File lazyFile = new File(tempDirectory, "lazy.txt");
+        FileUtils.writeStringToFile(lazyFile, "before", "UTF-8");
+
+        xarSink.addSource(new LazyXarFileSource(lazyFile, Encoding.GZIP, ChecksumAlgorithm.SHA1));
+
+        FileUtils.writeStringToFile(lazyFile, "after adding the source", "UTF-8");
+
+        xarSink.write(FileUtils.openOutputStream(archiveFile));
+
+        final FileXarSource fileXarSource = new FileXarSource(archiveFile);
+        assertThatEntryEqualsFile(fileXarSource.getEntry("lazy.txt"), lazyFile);
+    }
+
     @Test
     public void testAddSimpleFileSourceToParentDirectory() throws Exception {
         final File fileToCompress = TestUtil.getClasspathResourceAsFile("unpacked/file.txt");
@@ -91,6 +331,7 @@ public class XarSinkTest {
         assertThat(entry).isNotNull();
         assertThat(entry.isDirectory()).isEqualTo(file.isDirectory());
         assertThat(entry.getBytes()).isEqualTo(FileUtils.readFileToByteArray(file));
+        assertThat(entry.getSize()).isEqualTo(file.length());
 
         switch (entry.getChecksumAlgorithm()) {
             case NONE:
@@ -102,6 +343,12 @@ public class XarSinkTest {
             case MD5:
                 assertThat(entry.getChecksum()).isEqualTo(DigestUtils.md5Hex(FileUtils.openInputStream(file)));
                 break;
+            case SHA256:
+                assertThat(entry.getChecksum()).isEqualTo(DigestUtils.sha256Hex(FileUtils.openInputStream(file)));
+                break;
+            case SHA512:
+                assertThat(entry.getChecksum()).isEqualTo(DigestUtils.sha512Hex(FileUtils.openInputStream(file)));
+                break;
         }
     }
 }